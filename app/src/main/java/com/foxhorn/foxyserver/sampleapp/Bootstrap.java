@@ -20,12 +20,20 @@ package com.foxhorn.foxyserver.sampleapp;
 
 import android.content.Context;
 
+import com.foxhorn.foxyserver.FoxyServerSettings;
 import com.foxhorn.foxyserver.sampleapp.auth.ExampleGuestOnlyAuthHandler;
+import com.foxhorn.foxyserver.sampleapp.handlers.ExampleStatusHandler;
+import com.foxhorn.foxyserver.sampleapp.handlers.ExampleStatusHandlerRoutes;
 import com.foxhorn.foxyserver.web.api.IFileResolver;
 import com.foxhorn.foxyserver.web.api.IHttpAuthHandler;
 import com.foxhorn.foxyserver.web.hosting.AndroidContextAssetsFileResolver;
+import com.foxhorn.foxyserver.web.hosting.AssetPackFileResolver;
+import com.foxhorn.foxyserver.web.hosting.CachingFileResolver;
+import com.foxhorn.foxyserver.web.hosting.DeviceFileSystemWatcher;
 import com.foxhorn.foxyserver.web.hosting.HttpApplication;
+import com.foxhorn.foxyserver.web.hosting.pack.AssetManifest;
 
+import java.io.File;
 import java.io.IOException;
 
 /**
@@ -33,22 +41,64 @@ import java.io.IOException;
  * Created by Matt Van Horn on 5/27/15.
  */
 public class Bootstrap {
+	private static final long ASSET_CACHE_BYTES = 4 * 1024 * 1024;
+	private static final int ASSET_CACHE_MAX_FILE_BYTES = 512 * 1024;
+	private static final String HTDOCS_PACK = "htdocs.pack";
 
 	private HttpApplication httpApplication;
 	private final IHttpAuthHandler authHandler;
 	private IFileResolver fileResolver;
+	private DeviceFileSystemWatcher fileSystemWatcher;
 
 	public Bootstrap() {
 		authHandler = new ExampleGuestOnlyAuthHandler();
 	}
 
 	public void start(Context androidContext) {
-		fileResolver = new AndroidContextAssetsFileResolver(androidContext);
+		boolean useDeviceFileSystem = FoxyServerSettings.getInstance().isUsingDeviceFileSystem();
+		AssetManifest assetManifest = null;
+		if (!useDeviceFileSystem) {
+			try {
+				// the build packs htdocs into one file that is mapped straight out of the apk, unless it was built with
+				// -PlooseHtdocs in which case there is no pack and the files are served as they are
+				AssetPackFileResolver assetPackFileResolver = new AssetPackFileResolver(androidContext, HTDOCS_PACK);
+				assetManifest = assetPackFileResolver.getAssetManifest();
+				fileResolver = assetPackFileResolver;
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		AndroidContextAssetsFileResolver assetsFileResolver = null;
+		CachingFileResolver cachingFileResolver = null;
+		if (fileResolver == null) {
+			assetsFileResolver = new AndroidContextAssetsFileResolver(androidContext);
+			assetManifest = assetsFileResolver.getAssetManifest();
+			cachingFileResolver = new CachingFileResolver(assetsFileResolver, ASSET_CACHE_BYTES, ASSET_CACHE_MAX_FILE_BYTES);
+			cachingFileResolver.pin("/index.html");
+			fileResolver = cachingFileResolver;
+		}
 		httpApplication = new HttpApplication(9321, androidContext, null, fileResolver, authHandler);
+		// written by the route processor from the annotations on the handler
+		httpApplication.addRoutes(new ExampleStatusHandlerRoutes(new ExampleStatusHandler()));
+		// the build fingerprints everything but the pages, the manifest maps the plain names to the fingerprinted ones
+		httpApplication.setAssetManifest(assetManifest);
+		// the bundled libraries carry their version in their names so they never change under the same path
+		httpApplication.getCacheControlPolicy().addRule("/libs/**", "public, max-age=31536000, immutable");
+		httpApplication.getCacheControlPolicy().addRule("/index.html", "no-cache");
+		if (useDeviceFileSystem) {
+			// files pushed with adb while we run replace what was cached for them
+			fileSystemWatcher = new DeviceFileSystemWatcher(new File(String.format(FoxyServerSettings.getInstance().getDeviceFileSystemAppPath(), "")));
+			fileSystemWatcher.addListener(assetsFileResolver);
+			fileSystemWatcher.addListener(cachingFileResolver);
+			fileSystemWatcher.addListener(httpApplication.getEntityTagCache());
+			fileSystemWatcher.start();
+		}
 		httpApplication.start();
 	}
 
 	public void stop() throws IOException, InterruptedException {
+		if (fileSystemWatcher != null)
+			fileSystemWatcher.stop();
 		httpApplication.stop();
 	}
 
@@ -0,0 +1,50 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.sampleapp.handlers;
+
+import com.foxhorn.foxyserver.web.HttpContext;
+import com.foxhorn.foxyserver.web.HttpRequest;
+import com.foxhorn.foxyserver.web.hosting.HttpApplication;
+import com.foxhorn.foxyserver.web.hosting.routing.Action;
+import com.foxhorn.foxyserver.web.hosting.routing.Route;
+
+/**
+ * This sample handler is routed with annotations, the build writes ExampleStatusHandlerRoutes from them which
+ * Bootstrap adds to the server. /api/status/ lists the status and /api/status/echo/{text} sends the text back
+ */
+@Route("/api/status/")
+public class ExampleStatusHandler {
+
+	@Action("list")
+	public void list(HttpContext context) {
+		HttpApplication application = context.getHttpApplication();
+		context.getResponse().setMimeTypeJson();
+		context.getResponse().setReplyString(String.format(
+				"{\"running\":%s,\"queued\":%s,\"rejected\":%s}",
+				application.isRunning(),
+				application.getWorkerQueueDepth(),
+				application.getRejectedRequestCount()
+		));
+	}
+
+	@Route(value = "/api/status/echo/{text}", verb = HttpRequest.REQUEST_VERB_GET)
+	public void echo(HttpContext context) {
+		context.getResponse().setReplyString(context.getPathParameter("text"));
+	}
+}
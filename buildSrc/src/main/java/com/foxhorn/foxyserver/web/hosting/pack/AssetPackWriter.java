@@ -0,0 +1,149 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting.pack;
+
+import com.foxhorn.foxyserver.web.MimeTypeRegistry;
+import com.foxhorn.foxyserver.web.hosting.WebRootFiles;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This puts every file under a web root into one pack that AssetPack can read, see AssetPack for the layout. Text
+ * files, the types MimeTypeRegistry says are compressible, can be gzipped into file.gz entries next to the plain ones
+ * so they never have to be compressed on the device. This runs as part of the build and is not in the library
+ */
+public class AssetPackWriter {
+
+	private static final String PRECOMPRESSED_EXTENSION = ".gz";
+	// a variant that saves less than this much is not worth the space in the pack
+	private static final double MAX_PRECOMPRESSED_RATIO = 0.9;
+	private static final int MIN_PRECOMPRESS_BYTES = 256;
+	private static final int COPY_BUFFER_SIZE = 8192;
+
+	private final File root;
+	private final AssetPipeline.Encoder gzipEncoder = new AssetPipeline.GzipEncoder();
+	private boolean precompressing = true;
+
+	/**
+	 * Creates our writer
+	 *
+	 * @param root the directory that is the web root, its files are packed with paths relative to it
+	 */
+	public AssetPackWriter(File root) {
+		this.root = root;
+	}
+
+	/**
+	 * Packs a web root from the command line
+	 *
+	 * @param args the web root directory, the pack file to write and optionally --no-gzip
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: AssetPackWriter <web root> <pack file> [--no-gzip]");
+			System.exit(1);
+		}
+		AssetPackWriter writer = new AssetPackWriter(new File(args[0]));
+		writer.setPrecompressing(args.length < 3 || !args[2].equals("--no-gzip"));
+		writer.write(new File(args[1]));
+	}
+
+	/**
+	 * @param precompressing true to add gzipped variants of text files. default is true
+	 */
+	public void setPrecompressing(boolean precompressing) {
+		this.precompressing = precompressing;
+	}
+
+	/**
+	 * Writes the pack
+	 *
+	 * @param packFile where to write it
+	 * @return how many entries were packed
+	 * @throws IOException
+	 */
+	public int write(File packFile) throws IOException {
+		List<String> paths = new ArrayList<>();
+		WebRootFiles.list(root, "", paths);
+		// sorted so packing the same files always gives the same pack
+		Collections.sort(paths);
+		List<PendingEntry> pending = new ArrayList<>();
+		Set<String> packedPaths = new HashSet<>(paths);
+		for (String path : paths) {
+			File file = new File(root, path);
+			byte[] content = AssetPipeline.readFully(file);
+			pending.add(new PendingEntry(path, file.lastModified(), content));
+			String variantPath = path + PRECOMPRESSED_EXTENSION;
+			if (precompressing && !packedPaths.contains(variantPath) && content.length >= MIN_PRECOMPRESS_BYTES && MimeTypeRegistry.getInstance().forFile(path).isCompressible()) {
+				byte[] compressed = gzipEncoder.encode(content);
+				if (compressed.length <= content.length * MAX_PRECOMPRESSED_RATIO)
+					pending.add(new PendingEntry(variantPath, file.lastModified(), compressed));
+			}
+		}
+		long offset = 12;
+		for (PendingEntry entry : pending)
+			offset += 2 + entry.pathBytes.length + 8 + 8 + 8 + AssetPack.HASH_BYTES;
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(packFile), COPY_BUFFER_SIZE));
+		try {
+			out.writeInt(AssetPack.MAGIC);
+			out.writeInt(AssetPack.VERSION);
+			out.writeInt(pending.size());
+			for (PendingEntry entry : pending) {
+				out.writeShort(entry.pathBytes.length);
+				out.write(entry.pathBytes);
+				out.writeLong(offset);
+				out.writeLong(entry.content.length);
+				out.writeLong(entry.lastModified);
+				out.write(WebRootFiles.hash(entry.content));
+				offset += entry.content.length;
+			}
+			if (offset > Integer.MAX_VALUE)
+				throw new IOException("asset pack would be bigger than 2GB");
+			for (PendingEntry entry : pending)
+				out.write(entry.content);
+		} finally {
+			out.close();
+		}
+		return pending.size();
+	}
+
+	private static class PendingEntry {
+		private final byte[] pathBytes;
+		private final long lastModified;
+		private final byte[] content;
+
+		PendingEntry(String path, long lastModified, byte[] content) throws IOException {
+			pathBytes = path.getBytes(AssetPack.PATH_CHARSET);
+			if (pathBytes.length > 0xffff)
+				throw new IOException(String.format("path %s is too long to pack", path));
+			this.lastModified = lastModified;
+			this.content = content;
+		}
+	}
+}
@@ -0,0 +1,336 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting.pack;
+
+import com.foxhorn.foxyserver.text.StringUtils;
+import com.foxhorn.foxyserver.web.MimeTypeRegistry;
+import com.foxhorn.foxyserver.web.hosting.WebRootFiles;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This gets a web root ready to ship. Every file is run through the minifier for its extension, everything that is
+ * not a page gets a hash of its content added to its name (app.js becomes app.1a2b3c4d.js), pages and style sheets
+ * are rewritten to point at the new names, precompressed variants are written for the types MimeTypeRegistry says are
+ * compressible and an AssetManifest is written that ties it all together. Pages keep their names since they are what
+ * people type in. This runs as part of the build and is not in the library
+ */
+public class AssetPipeline {
+
+	private static final int FINGERPRINT_LENGTH = 8;
+	private static final String[] PAGE_EXTENSIONS = {"html", "htm"};
+	private static final String STYLE_SHEET_EXTENSION = "css";
+	// a variant that saves less than this much is not worth shipping
+	private static final double MAX_VARIANT_RATIO = 0.9;
+	private static final int MIN_VARIANT_BYTES = 256;
+	private static final int COPY_BUFFER_SIZE = 8192;
+	// a reference sits between quotes, in url() or after = and ends at a quote, bracket, query or fragment
+	private static final String REFERENCE_BEFORE = "(?<=[\"'(=\\s])";
+	private static final String REFERENCE_AFTER = "(?=[\"')?#\\s])";
+
+	private final File sourceRoot;
+	private final File outputRoot;
+	private final Map<String, Minifier> minifiers = new HashMap<>();
+	private final Map<String, Encoder> encoders = new LinkedHashMap<>();
+	private final List<String> excludedSuffixes = new ArrayList<>();
+
+	/**
+	 * Creates our pipeline with the style sheet minifier and gzip variants set up
+	 *
+	 * @param sourceRoot the web root to process
+	 * @param outputRoot where the processed web root is written, it should be empty
+	 */
+	public AssetPipeline(File sourceRoot, File outputRoot) {
+		this.sourceRoot = sourceRoot;
+		this.outputRoot = outputRoot;
+		minifiers.put(STYLE_SHEET_EXTENSION, new CssMinifier());
+		encoders.put(".gz", new GzipEncoder());
+	}
+
+	/**
+	 * Sets the minifier for an extension, there is none for js out of the box so plug in the one your build uses
+	 *
+	 * @param extension the file extension without the dot
+	 * @param minifier  the minifier or null for none
+	 */
+	@SuppressWarnings("unused")
+	public void setMinifier(String extension, Minifier minifier) {
+		if (minifier == null)
+			minifiers.remove(extension);
+		else
+			minifiers.put(extension, minifier);
+	}
+
+	/**
+	 * Adds a precompressed variant, plain java has no brotli encoder so plug one in to get .br variants
+	 *
+	 * @param extension the variant extension with the dot ie .br
+	 * @param encoder   the encoder
+	 */
+	@SuppressWarnings("unused")
+	public void addEncoder(String extension, Encoder encoder) {
+		encoders.put(extension, encoder);
+	}
+
+	/**
+	 * @param suffix files whose name ends with this are left out ie .sh
+	 */
+	public void exclude(String suffix) {
+		excludedSuffixes.add(suffix);
+	}
+
+	/**
+	 * Processes the web root
+	 *
+	 * @return the manifest entries written, logical path to served path
+	 * @throws IOException
+	 */
+	public Map<String, String> run() throws IOException {
+		// sorted so the same files always give the same output
+		Map<String, byte[]> contents = new TreeMap<>();
+		readFiles(contents);
+		if (!outputRoot.isDirectory() && !outputRoot.mkdirs())
+			throw new IOException(String.format("could not create %s", outputRoot));
+		for (Map.Entry<String, byte[]> file : contents.entrySet()) {
+			Minifier minifier = minifiers.get(extensionOf(file.getKey()));
+			if (minifier != null && !file.getKey().contains(".min."))
+				file.setValue(minifier.minify(file.getKey(), file.getValue()));
+		}
+		Map<String, String> servedPaths = new TreeMap<>();
+		// style sheets point at fonts and images so those get their names first, pages point at everything
+		for (Map.Entry<String, byte[]> file : contents.entrySet()) {
+			String extension = extensionOf(file.getKey());
+			if (!isPage(extension) && !extension.equals(STYLE_SHEET_EXTENSION))
+				servedPaths.put(file.getKey(), fingerprint(file.getKey(), file.getValue()));
+		}
+		Map<String, String> fingerprintedSoFar = new HashMap<>(servedPaths);
+		for (Map.Entry<String, byte[]> file : contents.entrySet()) {
+			if (extensionOf(file.getKey()).equals(STYLE_SHEET_EXTENSION)) {
+				file.setValue(rewriteReferences(file.getKey(), file.getValue(), fingerprintedSoFar));
+				servedPaths.put(file.getKey(), fingerprint(file.getKey(), file.getValue()));
+			}
+		}
+		for (Map.Entry<String, byte[]> file : contents.entrySet()) {
+			if (isPage(extensionOf(file.getKey()))) {
+				file.setValue(rewriteReferences(file.getKey(), file.getValue(), servedPaths));
+				servedPaths.put(file.getKey(), file.getKey());
+			}
+		}
+		Writer manifest = new OutputStreamWriter(new FileOutputStream(new File(outputRoot, AssetManifest.FILE_NAME)), AssetManifest.CHARSET);
+		try {
+			manifest.write(AssetManifest.HEADER);
+			manifest.write('\n');
+			for (Map.Entry<String, byte[]> file : contents.entrySet()) {
+				String servedPath = servedPaths.get(file.getKey());
+				writeFile(servedPath, file.getValue());
+				StringBuilder variants = new StringBuilder();
+				if (MimeTypeRegistry.getInstance().forFile(file.getKey()).isCompressible() && file.getValue().length >= MIN_VARIANT_BYTES) {
+					for (Map.Entry<String, Encoder> encoder : encoders.entrySet()) {
+						byte[] encoded = encoder.getValue().encode(file.getValue());
+						if (encoded.length > file.getValue().length * MAX_VARIANT_RATIO)
+							continue;
+						writeFile(servedPath + encoder.getKey(), encoded);
+						if (variants.length() > 0)
+							variants.append(',');
+						variants.append(encoder.getKey().substring(1));
+					}
+				}
+				manifest.write(String.format("%s\t%s\t%s\n", file.getKey(), servedPath, variants.length() == 0 ? AssetManifest.NO_VARIANTS : variants));
+			}
+		} finally {
+			manifest.close();
+		}
+		return servedPaths;
+	}
+
+	private void readFiles(Map<String, byte[]> contents) throws IOException {
+		List<String> paths = new ArrayList<>();
+		WebRootFiles.list(sourceRoot, "", paths);
+		for (String path : paths) {
+			if (!isExcluded(path))
+				contents.put(path, readFully(new File(sourceRoot, path)));
+		}
+	}
+
+	private boolean isExcluded(String path) {
+		for (String suffix : excludedSuffixes) {
+			if (path.endsWith(suffix))
+				return true;
+		}
+		return false;
+	}
+
+	private void writeFile(String path, byte[] content) throws IOException {
+		File file = new File(outputRoot, path);
+		File directory = file.getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException(String.format("could not create %s", directory));
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Puts a hash of the content in front of the extension, /css/site.css becomes /css/site.1a2b3c4d.css
+	 */
+	private static String fingerprint(String path, byte[] content) throws IOException {
+		String hash = StringUtils.bytesToHex(WebRootFiles.hash(content)).substring(0, FINGERPRINT_LENGTH).toLowerCase(Locale.US);
+		int slash = path.lastIndexOf('/');
+		int dot = path.lastIndexOf('.');
+		if (dot <= slash + 1)
+			return path + '.' + hash;
+		return path.substring(0, dot) + '.' + hash + path.substring(dot);
+	}
+
+	/**
+	 * Points references to other files at their new names, both absolute ones and ones relative to the file
+	 */
+	private static byte[] rewriteReferences(String path, byte[] content, Map<String, String> servedPaths) {
+		String text = new String(content, AssetManifest.CHARSET);
+		String directory = path.substring(0, path.lastIndexOf('/') + 1);
+		for (Map.Entry<String, String> served : servedPaths.entrySet()) {
+			if (served.getKey().equals(served.getValue()))
+				continue;
+			text = replaceReference(text, served.getKey(), served.getValue());
+			text = replaceReference(text, relativize(directory, served.getKey()), relativize(directory, served.getValue()));
+		}
+		return text.getBytes(AssetManifest.CHARSET);
+	}
+
+	private static String replaceReference(String text, String from, String to) {
+		if (!text.contains(from))
+			return text;
+		return Pattern.compile(REFERENCE_BEFORE + Pattern.quote(from) + REFERENCE_AFTER).matcher(text).replaceAll(Matcher.quoteReplacement(to));
+	}
+
+	/**
+	 * @param directory the directory a file is in ending with a slash ie /libs/css/
+	 * @param target    the absolute path of another file ie /libs/fonts/a.ttf
+	 * @return the path of the target relative to the directory ie ../fonts/a.ttf
+	 */
+	static String relativize(String directory, String target) {
+		String[] from = directory.substring(1).split("/");
+		String[] to = target.substring(1).split("/");
+		int fromCount = directory.length() > 1 ? from.length : 0;
+		int common = 0;
+		while (common < fromCount && common < to.length - 1 && from[common].equals(to[common]))
+			common++;
+		StringBuilder relative = new StringBuilder();
+		for (int i = common; i < fromCount; i++)
+			relative.append("../");
+		for (int i = common; i < to.length; i++) {
+			if (i > common)
+				relative.append('/');
+			relative.append(to[i]);
+		}
+		return relative.toString();
+	}
+
+	private static boolean isPage(String extension) {
+		for (String pageExtension : PAGE_EXTENSIONS) {
+			if (pageExtension.equals(extension))
+				return true;
+		}
+		return false;
+	}
+
+	static String extensionOf(String path) {
+		int dot = path.lastIndexOf('.');
+		return dot < path.lastIndexOf('/') ? "" : path.substring(dot + 1).toLowerCase(Locale.US);
+	}
+
+	static byte[] readFully(File file) throws IOException {
+		ByteArrayOutputStream collected = new ByteArrayOutputStream((int) file.length());
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[COPY_BUFFER_SIZE];
+			int count;
+			while ((count = in.read(buffer)) != -1)
+				collected.write(buffer, 0, count);
+		} finally {
+			in.close();
+		}
+		return collected.toByteArray();
+	}
+
+	/**
+	 * Makes a file smaller without changing what it does
+	 */
+	public interface Minifier {
+		/**
+		 * @param path    the file with path info
+		 * @param content the content of the file
+		 * @return the smaller content
+		 * @throws IOException
+		 */
+		byte[] minify(String path, byte[] content) throws IOException;
+	}
+
+	/**
+	 * Writes a precompressed variant of a file
+	 */
+	public interface Encoder {
+		/**
+		 * @param content the content of the file
+		 * @return the encoded content
+		 * @throws IOException
+		 */
+		byte[] encode(byte[] content) throws IOException;
+	}
+
+	static class GzipEncoder implements Encoder {
+		@Override
+		public byte[] encode(byte[] content) throws IOException {
+			ByteArrayOutputStream collected = new ByteArrayOutputStream(content.length / 2);
+			OutputStream out = new GZIPOutputStream(collected) {
+				{
+					def.setLevel(Deflater.BEST_COMPRESSION);
+				}
+			};
+			try {
+				out.write(content);
+			} finally {
+				out.close();
+			}
+			return collected.toByteArray();
+		}
+	}
+}
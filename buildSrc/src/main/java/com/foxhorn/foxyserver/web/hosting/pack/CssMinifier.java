@@ -0,0 +1,86 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting.pack;
+
+/**
+ * A safe and simple minifier for style sheets. Comments are dropped (apart from ones starting with /*! which by
+ * convention hold a license), runs of white space become one space and the space around braces, semicolons and
+ * commas is dropped. Strings are left exactly as they are. Nothing around other punctuation is touched since
+ * a : b means something else than a:b in a selector and calc() needs the spaces around + and -
+ */
+public class CssMinifier implements AssetPipeline.Minifier {
+
+	@Override
+	public byte[] minify(String path, byte[] content) {
+		String css = new String(content, AssetManifest.CHARSET);
+		StringBuilder out = new StringBuilder(css.length());
+		int length = css.length();
+		boolean pendingSpace = false;
+		int i = 0;
+		while (i < length) {
+			char current = css.charAt(i);
+			if (current == '/' && i + 1 < length && css.charAt(i + 1) == '*') {
+				int end = css.indexOf("*/", i + 2);
+				end = end < 0 ? length : end + 2;
+				if (i + 2 < length && css.charAt(i + 2) == '!') {
+					appendPendingSpace(out, pendingSpace, '/');
+					out.append(css, i, end);
+					pendingSpace = false;
+				}
+				i = end;
+			} else if (current == '"' || current == '\'') {
+				int end = i + 1;
+				while (end < length && css.charAt(end) != current) {
+					if (css.charAt(end) == '\\')
+						end++;
+					end++;
+				}
+				end = Math.min(end + 1, length);
+				appendPendingSpace(out, pendingSpace, current);
+				out.append(css, i, end);
+				pendingSpace = false;
+				i = end;
+			} else if (Character.isWhitespace(current)) {
+				pendingSpace = out.length() > 0;
+				i++;
+			} else {
+				if (isTight(current)) {
+					// a semicolon right before a closing brace is not needed
+					if (current == '}' && out.length() > 0 && out.charAt(out.length() - 1) == ';')
+						out.setLength(out.length() - 1);
+				} else {
+					appendPendingSpace(out, pendingSpace, current);
+				}
+				out.append(current);
+				pendingSpace = false;
+				i++;
+			}
+		}
+		return out.toString().getBytes(AssetManifest.CHARSET);
+	}
+
+	private static void appendPendingSpace(StringBuilder out, boolean pendingSpace, char next) {
+		if (pendingSpace && !isTight(out.charAt(out.length() - 1)) && !isTight(next))
+			out.append(' ');
+	}
+
+	private static boolean isTight(char value) {
+		return value == '{' || value == '}' || value == ';' || value == ',';
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * This reads @Route, @Action and @RequiresPermission off handler classes while the app is compiled and writes an
+ * IRouteTable for each class, named after it with Routes on the end. The table adds the routes with handlers that call
+ * the methods directly and carry the permissions each method needs, so there is no reflection or class scanning when
+ * the server starts. Add this module to the app as provided and javac finds it on its own
+ */
+@SupportedAnnotationTypes({RouteProcessor.ROUTE, RouteProcessor.ACTION, RouteProcessor.REQUIRES_PERMISSION})
+public class RouteProcessor extends AbstractProcessor {
+
+	static final String ROUTE = "com.foxhorn.foxyserver.web.hosting.routing.Route";
+	static final String ACTION = "com.foxhorn.foxyserver.web.hosting.routing.Action";
+	static final String REQUIRES_PERMISSION = "com.foxhorn.foxyserver.web.hosting.routing.RequiresPermission";
+	private static final String HTTP_CONTEXT = "com.foxhorn.foxyserver.web.HttpContext";
+	private static final String ROUTES_SUFFIX = "Routes";
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		Map<TypeElement, RouteTableWriter> tables = new LinkedHashMap<>();
+		TypeElement route = processingEnv.getElementUtils().getTypeElement(ROUTE);
+		TypeElement action = processingEnv.getElementUtils().getTypeElement(ACTION);
+		if (route == null || action == null)
+			return false;
+		for (Element element : roundEnv.getElementsAnnotatedWith(route)) {
+			if (element.getKind() == ElementKind.CLASS) {
+				RouteTableWriter table = tableFor((TypeElement) element, tables);
+				if (table != null)
+					table.setClassRoute(getString(element, ROUTE, "value"));
+			} else if (element.getKind() == ElementKind.METHOD) {
+				ExecutableElement method = (ExecutableElement) element;
+				if (!isHandlerMethod(method))
+					continue;
+				if (findAnnotation(method, ACTION) != null) {
+					error(method, "a method can have @Route or @Action, not both");
+					continue;
+				}
+				RouteTableWriter table = tableFor((TypeElement) method.getEnclosingElement(), tables);
+				if (table != null) {
+					table.addMethodRoute(
+							getString(method, ROUTE, "value"),
+							(Byte) getValue(method, ROUTE, "verb"),
+							(Boolean) getValue(method, ROUTE, "prefix"),
+							method.getSimpleName().toString(),
+							method.getModifiers().contains(Modifier.STATIC),
+							getPermissions(method)
+					);
+				}
+			}
+		}
+		for (Element element : roundEnv.getElementsAnnotatedWith(action)) {
+			ExecutableElement method = (ExecutableElement) element;
+			if (!isHandlerMethod(method))
+				continue;
+			RouteTableWriter table = tableFor((TypeElement) method.getEnclosingElement(), tables);
+			if (table == null)
+				continue;
+			String name = getString(method, ACTION, "value");
+			if (!table.addAction(name, method.getSimpleName().toString(), method.getModifiers().contains(Modifier.STATIC), getPermissions(method)))
+				error(method, String.format("action %s is already handled by another method", name));
+		}
+		for (Map.Entry<TypeElement, RouteTableWriter> entry : tables.entrySet()) {
+			RouteTableWriter table = entry.getValue();
+			if (table.hasActions() && table.getClassRoute() == null) {
+				error(entry.getKey(), "a class with @Action methods needs a @Route");
+				continue;
+			}
+			if (!table.hasActions() && table.getClassRoute() != null)
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "a @Route class has no @Action methods so nothing is routed to it", entry.getKey());
+			write(entry.getKey(), table);
+		}
+		return true;
+	}
+
+	private RouteTableWriter tableFor(TypeElement type, Map<TypeElement, RouteTableWriter> tables) {
+		RouteTableWriter table = tables.get(type);
+		if (table != null)
+			return table;
+		if (type.getModifiers().contains(Modifier.PRIVATE)) {
+			error(type, "a class with routes can not be private");
+			return null;
+		}
+		if (type.getNestingKind() != NestingKind.TOP_LEVEL && (type.getNestingKind() != NestingKind.MEMBER || !type.getModifiers().contains(Modifier.STATIC))) {
+			error(type, "a class with routes has to be top level or a static nested class");
+			return null;
+		}
+		// nested classes are named after the classes around them so the tables never clash
+		StringBuilder name = new StringBuilder(type.getSimpleName());
+		for (Element outer = type.getEnclosingElement(); outer.getKind() != ElementKind.PACKAGE; outer = outer.getEnclosingElement())
+			name.insert(0, '_').insert(0, outer.getSimpleName());
+		name.append(ROUTES_SUFFIX);
+		String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+		table = new RouteTableWriter(packageName, name.toString(), type.getQualifiedName().toString(), getPermissions(type));
+		tables.put(type, table);
+		return table;
+	}
+
+	private boolean isHandlerMethod(ExecutableElement method) {
+		if (method.getModifiers().contains(Modifier.PRIVATE)) {
+			error(method, "a route method can not be private");
+			return false;
+		}
+		if (method.getReturnType().getKind() != TypeKind.VOID
+				|| method.getParameters().size() != 1
+				|| !method.getParameters().get(0).asType().toString().equals(HTTP_CONTEXT)) {
+			error(method, String.format("a route method has to be void %s(HttpContext context)", method.getSimpleName()));
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the permissions on a class or method, the ones on the class are added to its methods when written
+	 */
+	private Set<Integer> getPermissions(Element element) {
+		Set<Integer> permissions = new TreeSet<>();
+		Object value = getValue(element, REQUIRES_PERMISSION, "value");
+		if (value != null) {
+			for (Object permission : (List<?>) value)
+				permissions.add((Integer) ((AnnotationValue) permission).getValue());
+		}
+		return permissions;
+	}
+
+	private static AnnotationMirror findAnnotation(Element element, String annotation) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+			if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation))
+				return mirror;
+		}
+		return null;
+	}
+
+	/**
+	 * Reads an annotation value by name with its default filled in, the annotation classes are not on our class path
+	 *
+	 * @return the value or null if the element does not have the annotation
+	 */
+	private Object getValue(Element element, String annotation, String name) {
+		AnnotationMirror mirror = findAnnotation(element, annotation);
+		if (mirror == null)
+			return null;
+		Map<? extends ExecutableElement, ? extends AnnotationValue> values = processingEnv.getElementUtils().getElementValuesWithDefaults(mirror);
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : values.entrySet()) {
+			if (value.getKey().getSimpleName().contentEquals(name))
+				return value.getValue().getValue();
+		}
+		return null;
+	}
+
+	private String getString(Element element, String annotation, String name) {
+		return (String) getValue(element, annotation, name);
+	}
+
+	private void write(TypeElement type, RouteTableWriter table) {
+		try {
+			JavaFileObject file = processingEnv.getFiler().createSourceFile(table.getQualifiedName(), type);
+			Writer writer = file.openWriter();
+			try {
+				table.write(writer);
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			error(type, String.format("could not write %s: %s", table.getQualifiedName(), e));
+		}
+	}
+
+	private void error(Element element, String message) {
+		Messager messager = processingEnv.getMessager();
+		messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * This holds the routes found on one handler class and writes the IRouteTable for them. The class route becomes one
+ * handler that dispatches its actions by index with a switch, each method route becomes a handler of its own
+ */
+class RouteTableWriter {
+
+	private static final String INDENT = "\t";
+
+	private final String packageName;
+	private final String simpleName;
+	private final String targetName;
+	private final Set<Integer> classPermissions;
+	private final List<RouteMethod> actions = new ArrayList<>();
+	private final List<RouteMethod> methodRoutes = new ArrayList<>();
+	private String classRoute;
+	private boolean needsTarget;
+
+	RouteTableWriter(String packageName, String simpleName, String targetName, Set<Integer> classPermissions) {
+		this.packageName = packageName;
+		this.simpleName = simpleName;
+		this.targetName = targetName;
+		this.classPermissions = classPermissions;
+	}
+
+	String getQualifiedName() {
+		return packageName.isEmpty() ? simpleName : packageName + '.' + simpleName;
+	}
+
+	String getClassRoute() {
+		return classRoute;
+	}
+
+	void setClassRoute(String classRoute) {
+		this.classRoute = classRoute;
+	}
+
+	boolean hasActions() {
+		return !actions.isEmpty();
+	}
+
+	/**
+	 * @return false if another method already handles the action
+	 */
+	boolean addAction(String action, String methodName, boolean isStatic, Set<Integer> permissions) {
+		for (RouteMethod existing : actions) {
+			if (existing.path.equals(action))
+				return false;
+		}
+		actions.add(new RouteMethod(action, (byte) 0, true, methodName, isStatic, permissions));
+		needsTarget |= !isStatic;
+		return true;
+	}
+
+	void addMethodRoute(String path, byte verb, boolean prefix, String methodName, boolean isStatic, Set<Integer> permissions) {
+		methodRoutes.add(new RouteMethod(path, verb, prefix, methodName, isStatic, permissions));
+		needsTarget |= !isStatic;
+	}
+
+	void write(Writer out) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		if (!packageName.isEmpty())
+			sb.append("package ").append(packageName).append(";\n\n");
+		sb.append("import com.foxhorn.foxyserver.web.HttpContext;\n");
+		sb.append("import com.foxhorn.foxyserver.web.api.IRouteTable;\n");
+		sb.append("import com.foxhorn.foxyserver.web.hosting.handlers.GeneratedPathHandler;\n");
+		sb.append("import com.foxhorn.foxyserver.web.hosting.routing.PathRouter;\n\n");
+		sb.append("/**\n * The routes of ").append(targetName).append(", written by the foxyserver route processor. Do not edit\n */\n");
+		sb.append("public final class ").append(simpleName).append(" implements IRouteTable {\n\n");
+		if (needsTarget) {
+			line(sb, 1, "private final " + targetName + " target;");
+			sb.append('\n');
+			line(sb, 1, "public " + simpleName + "(" + targetName + " target) {");
+			line(sb, 2, "this.target = target;");
+			line(sb, 1, "}");
+		} else {
+			line(sb, 1, "public " + simpleName + "() {");
+			line(sb, 1, "}");
+		}
+		sb.append('\n');
+		line(sb, 1, "@Override");
+		line(sb, 1, "public void register(PathRouter router) {");
+		if (classRoute != null && !actions.isEmpty()) {
+			StringBuilder names = new StringBuilder("new String[]{");
+			StringBuilder permissions = new StringBuilder("new int[][]{");
+			for (int i = 0; i < actions.size(); i++) {
+				if (i > 0) {
+					names.append(", ");
+					permissions.append(", ");
+				}
+				names.append(literal(actions.get(i).path));
+				permissions.append(permissionsLiteral(actions.get(i).permissions));
+			}
+			names.append('}');
+			permissions.append('}');
+			line(sb, 2, "router.addPrefixRoute(PathRouter.ANY_VERB, " + literal(classRoute) + ", new GeneratedPathHandler(" + literal(classRoute) + ", " + names + ", " + permissions + ") {");
+			line(sb, 3, "@Override");
+			line(sb, 3, "protected void dispatch(HttpContext context, int action) {");
+			line(sb, 4, "switch (action) {");
+			for (int i = 0; i < actions.size(); i++) {
+				line(sb, 5, "case " + i + ":");
+				line(sb, 6, call(actions.get(i)));
+				line(sb, 6, "break;");
+			}
+			line(sb, 4, "}");
+			line(sb, 3, "}");
+			line(sb, 2, "});");
+		}
+		for (RouteMethod route : methodRoutes) {
+			String add = route.prefix ? "addPrefixRoute" : "addRoute";
+			line(sb, 2, "router." + add + "((byte) " + route.verb + ", " + literal(route.path) + ", new GeneratedPathHandler(" + literal(route.path) + ", null, new int[][]{" + permissionsLiteral(route.permissions) + "}) {");
+			line(sb, 3, "@Override");
+			line(sb, 3, "protected void dispatch(HttpContext context, int action) {");
+			line(sb, 4, call(route));
+			line(sb, 3, "}");
+			line(sb, 2, "});");
+		}
+		line(sb, 1, "}");
+		sb.append("}\n");
+		out.write(sb.toString());
+	}
+
+	private String call(RouteMethod route) {
+		return (route.isStatic ? targetName : "target") + '.' + route.methodName + "(context);";
+	}
+
+	/**
+	 * The permissions of a method with the ones of its class, sorted with no repeats
+	 */
+	private String permissionsLiteral(Set<Integer> methodPermissions) {
+		Set<Integer> permissions = new TreeSet<>(classPermissions);
+		permissions.addAll(methodPermissions);
+		StringBuilder sb = new StringBuilder("{");
+		Iterator<Integer> iterator = permissions.iterator();
+		while (iterator.hasNext()) {
+			sb.append(iterator.next());
+			if (iterator.hasNext())
+				sb.append(", ");
+		}
+		return sb.append('}').toString();
+	}
+
+	private static String literal(String value) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); i++) {
+			char current = value.charAt(i);
+			if (current == '"' || current == '\\')
+				sb.append('\\').append(current);
+			else if (current < ' ' || current > '~')
+				sb.append(String.format("\\u%04x", (int) current));
+			else
+				sb.append(current);
+		}
+		return sb.append('"').toString();
+	}
+
+	private static void line(StringBuilder sb, int depth, String text) {
+		for (int i = 0; i < depth; i++)
+			sb.append(INDENT);
+		sb.append(text).append('\n');
+	}
+
+	/**
+	 * One method and the path or action that leads to it
+	 */
+	private static class RouteMethod {
+		private final String path;
+		private final byte verb;
+		private final boolean prefix;
+		private final String methodName;
+		private final boolean isStatic;
+		private final Set<Integer> permissions;
+
+		RouteMethod(String path, byte verb, boolean prefix, String methodName, boolean isStatic, Set<Integer> permissions) {
+			this.path = path;
+			this.verb = verb;
+			this.prefix = prefix;
+			this.methodName = methodName;
+			this.isStatic = isStatic;
+			this.permissions = permissions;
+		}
+	}
+}
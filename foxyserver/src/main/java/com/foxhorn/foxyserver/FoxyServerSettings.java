@@ -23,10 +23,15 @@ import android.provider.Settings;
 import android.util.Log;
 
 import com.foxhorn.foxyserver.text.StringUtils;
+import com.foxhorn.foxyserver.web.MimeType;
+import com.foxhorn.foxyserver.web.MimeTypeRegistry;
 import com.foxhorn.foxyserver.web.api.ICryptoHandler;
 import com.foxhorn.foxyserver.web.security.crypto.DefaultCryptoHandler;
 
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * This is a high level settings interface for servers
@@ -35,10 +40,31 @@ import java.security.NoSuchAlgorithmException;
  */
 @SuppressWarnings("unused")
 public class FoxyServerSettings {
+	/**
+	 * one thread blocks on accept and each connection holds a worker thread for its whole life
+	 */
+	public static final byte SERVER_ENGINE_BLOCKING = 1;
+	/**
+	 * selector based reactor threads do all socket io and workers only run handlers
+	 */
+	public static final byte SERVER_ENGINE_NIO = 2;
 	private static final String BUILT_IN_SALT = "7y8Mg8eMAA8ji8imGksySnhk8jadq6mkS4kaF0Cgsx2xYPLT0FMK8kOQTrkRnr8";
 	private static final String HARDWARE_ID_NOT_SET = "UNKNOWN";
 	private static final String DEFAULT_EXTERNAL_FILESYSTEM_PATH_FORMAT = "/sdcard/foxy-server/html/%s";
 	private static final int SESSION_INACTIVITY_TIMEOUT_SECONDS = 3600;
+	private static final int KEEP_ALIVE_TIMEOUT_SECONDS = 15;
+	private static final int MAX_REQUESTS_PER_CONNECTION = 100;
+	private static final int WORKER_THREAD_COUNT = 16;
+	private static final int WORKER_QUEUE_LIMIT = 64;
+	private static final int OVERLOAD_RETRY_AFTER_SECONDS = 2;
+	private static final int COMPRESSION_MIN_BYTES = 1024;
+	private static final int REQUEST_BODY_MEMORY_THRESHOLD_BYTES = 64 * 1024;
+	private static final long MAX_REQUEST_BODY_BYTES = 16 * 1024 * 1024;
+	private static final long MAX_MULTIPART_BODY_BYTES = 1024 * 1024 * 1024;
+	private static final int COMPRESSION_LEVEL = 6;
+	private static final int MISSING_FILE_CACHE_SIZE = 512;
+	private static final long MISSING_FILE_CACHE_MILLIS = 30000;
+	private static final long ASYNC_REQUEST_TIMEOUT_MILLIS = 30000;
 	private int getSessionInactivityTimeoutSeconds = SESSION_INACTIVITY_TIMEOUT_SECONDS;
 	private String appPrivateCryptoSalt = BUILT_IN_SALT;
 	private ICryptoHandler cryptoHandler;
@@ -47,6 +73,22 @@ public class FoxyServerSettings {
 	private boolean useDeviceFileSystem = false;
 	private String deviceFileSystemAppPath = DEFAULT_EXTERNAL_FILESYSTEM_PATH_FORMAT;
 	private String defaultLanguage = "en-US";
+	private byte serverEngine = SERVER_ENGINE_BLOCKING;
+	private int nioReactorThreadCount = 1;
+	private int keepAliveTimeoutSeconds = KEEP_ALIVE_TIMEOUT_SECONDS;
+	private int maxRequestsPerConnection = MAX_REQUESTS_PER_CONNECTION;
+	private int workerThreadCount = WORKER_THREAD_COUNT;
+	private int workerQueueLimit = WORKER_QUEUE_LIMIT;
+	private int overloadRetryAfterSeconds = OVERLOAD_RETRY_AFTER_SECONDS;
+	private boolean compressDynamicResponses = false;
+	private int compressionMinBytes = COMPRESSION_MIN_BYTES;
+	private int compressionLevel = COMPRESSION_LEVEL;
+	private int requestBodyMemoryThresholdBytes = REQUEST_BODY_MEMORY_THRESHOLD_BYTES;
+	private long maxRequestBodyBytes = MAX_REQUEST_BODY_BYTES;
+	private long maxMultipartBodyBytes = MAX_MULTIPART_BODY_BYTES;
+	private int missingFileCacheSize = MISSING_FILE_CACHE_SIZE;
+	private long missingFileCacheMillis = MISSING_FILE_CACHE_MILLIS;
+	private long asyncRequestTimeoutMillis = ASYNC_REQUEST_TIMEOUT_MILLIS;
 
 	private FoxyServerSettings() {
 		try {
@@ -188,4 +230,255 @@ public class FoxyServerSettings {
 	public void setDefaultLanguage(String defaultLanguage) {
 		this.defaultLanguage = defaultLanguage;
 	}
+
+	/**
+	 * @return which engine the server accepts and drives connections with (SERVER_ENGINE_BLOCKING or SERVER_ENGINE_NIO)
+	 */
+	public byte getServerEngine() {
+		return serverEngine;
+	}
+
+	/**
+	 * @param serverEngine which engine the server accepts and drives connections with (SERVER_ENGINE_BLOCKING or SERVER_ENGINE_NIO). must be set before the server is started
+	 */
+	public void setServerEngine(byte serverEngine) {
+		this.serverEngine = serverEngine;
+	}
+
+	/**
+	 * @return how many selector threads the nio engine runs. default is 1
+	 */
+	public int getNioReactorThreadCount() {
+		return nioReactorThreadCount;
+	}
+
+	/**
+	 * @param nioReactorThreadCount how many selector threads the nio engine runs. default is 1 which is plenty for most devices
+	 */
+	public void setNioReactorThreadCount(int nioReactorThreadCount) {
+		this.nioReactorThreadCount = nioReactorThreadCount;
+	}
+
+	/**
+	 * @return how long an open connection may sit idle waiting for its next request before it is closed expressed in seconds default is 15
+	 */
+	public int getKeepAliveTimeoutSeconds() {
+		return keepAliveTimeoutSeconds;
+	}
+
+	/**
+	 * @param keepAliveTimeoutSeconds how long an open connection may sit idle waiting for its next request before it is closed expressed in seconds default is 15
+	 */
+	public void setKeepAliveTimeoutSeconds(int keepAliveTimeoutSeconds) {
+		this.keepAliveTimeoutSeconds = keepAliveTimeoutSeconds;
+	}
+
+	/**
+	 * @return how many requests a single connection may serve before it is closed. default is 100
+	 */
+	public int getMaxRequestsPerConnection() {
+		return maxRequestsPerConnection;
+	}
+
+	/**
+	 * @param maxRequestsPerConnection how many requests a single connection may serve before it is closed. setting 1 turns keep-alive off
+	 */
+	public void setMaxRequestsPerConnection(int maxRequestsPerConnection) {
+		this.maxRequestsPerConnection = maxRequestsPerConnection;
+	}
+
+	/**
+	 * @return the most threads that will run requests at the same time. default is 16
+	 */
+	public int getWorkerThreadCount() {
+		return workerThreadCount;
+	}
+
+	/**
+	 * @param workerThreadCount the most threads that will run requests at the same time. must be set before the server is created
+	 */
+	public void setWorkerThreadCount(int workerThreadCount) {
+		this.workerThreadCount = workerThreadCount;
+	}
+
+	/**
+	 * @return how many connections may wait for a free worker before new ones are turned away with a 503. default is 64
+	 */
+	public int getWorkerQueueLimit() {
+		return workerQueueLimit;
+	}
+
+	/**
+	 * @param workerQueueLimit how many connections may wait for a free worker before new ones are turned away with a 503. must be set before the server is created
+	 */
+	public void setWorkerQueueLimit(int workerQueueLimit) {
+		this.workerQueueLimit = workerQueueLimit;
+	}
+
+	/**
+	 * @return the Retry-After value in seconds sent with the 503 when the server is overloaded. default is 2
+	 */
+	public int getOverloadRetryAfterSeconds() {
+		return overloadRetryAfterSeconds;
+	}
+
+	/**
+	 * @param overloadRetryAfterSeconds the Retry-After value in seconds sent with the 503 when the server is overloaded. must be set before the server is created
+	 */
+	public void setOverloadRetryAfterSeconds(int overloadRetryAfterSeconds) {
+		this.overloadRetryAfterSeconds = overloadRetryAfterSeconds;
+	}
+
+	/**
+	 * @return true if replies built by handlers (strings and binary replies) are gzipped for clients that accept it. default is false
+	 */
+	public boolean isCompressingDynamicResponses() {
+		return compressDynamicResponses;
+	}
+
+	/**
+	 * @param compressDynamicResponses true to gzip replies built by handlers for clients that accept it
+	 */
+	public void setCompressDynamicResponses(boolean compressDynamicResponses) {
+		this.compressDynamicResponses = compressDynamicResponses;
+	}
+
+	/**
+	 * @return replies smaller than this many bytes are sent as is because gzip would not save anything. default is 1024
+	 */
+	public int getCompressionMinBytes() {
+		return compressionMinBytes;
+	}
+
+	/**
+	 * @param compressionMinBytes replies smaller than this many bytes are sent as is
+	 */
+	public void setCompressionMinBytes(int compressionMinBytes) {
+		this.compressionMinBytes = compressionMinBytes;
+	}
+
+	/**
+	 * @return the deflate level used to compress replies from 1 (fastest) to 9 (smallest). default is 6
+	 */
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	/**
+	 * @param compressionLevel the deflate level used to compress replies from 1 (fastest) to 9 (smallest)
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * @param contentType the content type of a reply without any parameters ie application/json
+	 * @return true if replies of this type are worth compressing
+	 * @deprecated the MimeTypeRegistry decides this now, use {@link MimeType#isCompressible()}
+	 */
+	@Deprecated
+	public boolean isCompressibleContentType(String contentType) {
+		MimeType mimeType = MimeTypeRegistry.getInstance().forContentType(contentType);
+		return mimeType != null && mimeType.isCompressible();
+	}
+
+	/**
+	 * @param contentTypes the content types (without parameters) that are worth compressing, this replaces the defaults
+	 * @deprecated the MimeTypeRegistry decides this now, use {@link MimeTypeRegistry#setCompressible(String, boolean)}
+	 */
+	@Deprecated
+	public void setCompressibleContentTypes(String... contentTypes) {
+		Set<String> compressible = new HashSet<>(Arrays.asList(contentTypes));
+		MimeTypeRegistry registry = MimeTypeRegistry.getInstance();
+		for (String type : registry.getTypes()) {
+			if (!compressible.contains(type))
+				registry.setCompressible(type, false);
+		}
+		for (String type : contentTypes)
+			registry.setCompressible(type, true);
+	}
+
+	/**
+	 * @return request bodies bigger than this many bytes are spilled to a temp file instead of being held in memory. default is 64KB
+	 */
+	public int getRequestBodyMemoryThresholdBytes() {
+		return requestBodyMemoryThresholdBytes;
+	}
+
+	/**
+	 * @param requestBodyMemoryThresholdBytes request bodies bigger than this many bytes are spilled to a temp file instead of being held in memory
+	 */
+	public void setRequestBodyMemoryThresholdBytes(int requestBodyMemoryThresholdBytes) {
+		this.requestBodyMemoryThresholdBytes = requestBodyMemoryThresholdBytes;
+	}
+
+	/**
+	 * @return requests with a bigger body than this are turned away with a 413. default is 16MB
+	 */
+	public long getMaxRequestBodyBytes() {
+		return maxRequestBodyBytes;
+	}
+
+	/**
+	 * @param maxRequestBodyBytes requests with a bigger body than this are turned away with a 413
+	 */
+	public void setMaxRequestBodyBytes(long maxRequestBodyBytes) {
+		this.maxRequestBodyBytes = maxRequestBodyBytes;
+	}
+
+	/**
+	 * @return multipart/form-data requests with a bigger body than this are turned away with a 413, they are read straight off the connection so this can be far over the max request body size. default is 1GB
+	 */
+	public long getMaxMultipartBodyBytes() {
+		return maxMultipartBodyBytes;
+	}
+
+	/**
+	 * @param maxMultipartBodyBytes multipart/form-data requests with a bigger body than this are turned away with a 413
+	 */
+	public void setMaxMultipartBodyBytes(long maxMultipartBodyBytes) {
+		this.maxMultipartBodyBytes = maxMultipartBodyBytes;
+	}
+
+	/**
+	 * @return how many paths that were not found on the device file system are remembered so asking again is free. default is 512
+	 */
+	public int getMissingFileCacheSize() {
+		return missingFileCacheSize;
+	}
+
+	/**
+	 * @param missingFileCacheSize how many paths that were not found on the device file system are remembered, 0 turns this off
+	 */
+	public void setMissingFileCacheSize(int missingFileCacheSize) {
+		this.missingFileCacheSize = missingFileCacheSize;
+	}
+
+	/**
+	 * @return how long in millis a path is remembered as not found. default is 30 seconds, any change a DeviceFileSystemWatcher sees forgets them all sooner
+	 */
+	public long getMissingFileCacheMillis() {
+		return missingFileCacheMillis;
+	}
+
+	/**
+	 * @param missingFileCacheMillis how long in millis a path is remembered as not found
+	 */
+	public void setMissingFileCacheMillis(long missingFileCacheMillis) {
+		this.missingFileCacheMillis = missingFileCacheMillis;
+	}
+
+	/**
+	 * @return how long in millis an async handler has to complete its response before the client is sent a 504. default is 30 seconds
+	 */
+	public long getAsyncRequestTimeoutMillis() {
+		return asyncRequestTimeoutMillis;
+	}
+
+	/**
+	 * @param asyncRequestTimeoutMillis how long in millis an async handler has to complete its response
+	 */
+	public void setAsyncRequestTimeoutMillis(long asyncRequestTimeoutMillis) {
+		this.asyncRequestTimeoutMillis = asyncRequestTimeoutMillis;
+	}
 }
\ No newline at end of file
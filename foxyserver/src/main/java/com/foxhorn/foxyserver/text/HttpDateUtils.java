@@ -0,0 +1,63 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.foxhorn.foxyserver.text;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Collection of tools for the date format used in http headers ie Sun, 06 Nov 1994 08:49:37 GMT
+ */
+public class HttpDateUtils {
+
+	private static final String HTTP_DATE_PATTERN = "EEE, dd MMM yyyy HH:mm:ss zzz";
+	// SimpleDateFormat is not thread safe so each worker gets its own
+	private static final ThreadLocal<SimpleDateFormat> HTTP_DATE_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_PATTERN, Locale.US);
+			format.setTimeZone(TimeZone.getTimeZone("GMT"));
+			return format;
+		}
+	};
+
+	/**
+	 * @param millis the time in millis since the epoch
+	 * @return the time as an http date
+	 */
+	public static String format(long millis) {
+		return HTTP_DATE_FORMAT.get().format(new Date(millis));
+	}
+
+	/**
+	 * @param httpDate an http date
+	 * @return the time in millis since the epoch or -1 if it could not be read
+	 */
+	public static long parse(String httpDate) {
+		if (httpDate == null)
+			return -1;
+		try {
+			return HTTP_DATE_FORMAT.get().parse(httpDate.trim()).getTime();
+		} catch (ParseException e) {
+			return -1;
+		}
+	}
+}
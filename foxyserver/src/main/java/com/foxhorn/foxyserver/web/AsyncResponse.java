@@ -0,0 +1,114 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This is the answer to a request that a handler finishes later, from any thread, so the worker that ran the handler
+ * can go back to the pool while it waits on something slow like a database. Get one from HttpContext.startAsync, fill
+ * in getResponse the same way as for any other request and call complete, or fail if it went wrong. If neither is
+ * called before the deadline the client is sent a 504 and the connection is closed, whatever the handler does after
+ * that is ignored and the request it was given has been released
+ */
+public class AsyncResponse {
+
+	private final HttpContext context;
+	private final HttpResponse response;
+	private final AtomicBoolean done = new AtomicBoolean();
+	private volatile ScheduledFuture<?> deadline;
+
+	AsyncResponse(HttpContext context, HttpResponse response) {
+		this.context = context;
+		this.response = response;
+	}
+
+	/**
+	 * @return the response to fill in before calling complete
+	 */
+	public HttpResponse getResponse() {
+		return response;
+	}
+
+	/**
+	 * Sends the response, only the first call to complete or fail does anything
+	 *
+	 * @return false if the response was already sent or the deadline passed
+	 */
+	public boolean complete() {
+		if (!done.compareAndSet(false, true))
+			return false;
+		ScheduledFuture<?> current = deadline;
+		if (current != null)
+			current.cancel(false);
+		context.finishAsync(response);
+		return true;
+	}
+
+	/**
+	 * Sends a 500 for an error, or cuts off a streamed body that already started
+	 *
+	 * @param error what went wrong
+	 * @return false if the response was already sent or the deadline passed
+	 */
+	@SuppressWarnings("unused")
+	public boolean fail(Throwable error) {
+		if (done.get())
+			return false;
+		if (response.isCommitted()) {
+			response.abortStream();
+		} else {
+			response.setHttpStatus(HttpResponse.HTTP_STATUS_INTERNAL_SERVER_ERROR);
+			response.setReplyString(error.toString());
+		}
+		return complete();
+	}
+
+	/**
+	 * @return true once the response was sent or the deadline passed
+	 */
+	@SuppressWarnings("unused")
+	public boolean isDone() {
+		return done.get();
+	}
+
+	void setDeadline(ScheduledFuture<?> deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Called when the deadline passes, the handler may still be using its response so a new one is sent
+	 */
+	void expire() {
+		if (!done.compareAndSet(false, true))
+			return;
+		if (response.isCommitted()) {
+			// a streamed body is part way out so it is cut off rather than followed by a 504
+			response.abortStream();
+			context.finishAsync(response);
+			return;
+		}
+		HttpResponse timedOut = new HttpResponse(context);
+		timedOut.setKeepAlive(false);
+		timedOut.setHttpStatus(HttpResponse.HTTP_STATUS_GATEWAY_TIMEOUT);
+		timedOut.setReplyString("request timed out");
+		context.finishAsync(timedOut);
+	}
+}
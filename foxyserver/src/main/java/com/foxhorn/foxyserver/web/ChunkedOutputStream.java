@@ -0,0 +1,130 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes everything it is given using HTTP/1.1 chunked transfer encoding. Small writes are collected till the buffer
+ * fills or flush is called so we do not send a pile of tiny chunks. Closing (or calling finish) writes the last chunk
+ * but leaves the underlying stream open so the connection can be reused.
+ */
+public class ChunkedOutputStream extends OutputStream {
+
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+	private static final byte[] CRLF = {'\r', '\n'};
+	private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+	private final OutputStream out;
+	private final byte[] buffer;
+	private int count;
+	private boolean finished;
+
+	/**
+	 * Creates our stream
+	 *
+	 * @param out the stream the chunks are written to
+	 */
+	public ChunkedOutputStream(OutputStream out) {
+		this(out, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates our stream
+	 *
+	 * @param out        the stream the chunks are written to
+	 * @param bufferSize how many bytes to collect before a chunk is sent
+	 */
+	public ChunkedOutputStream(OutputStream out, int bufferSize) {
+		this.out = out;
+		buffer = new byte[bufferSize];
+	}
+
+	@Override
+	public void write(int oneByte) throws IOException {
+		if (finished)
+			throw new IOException("chunked stream already finished");
+		if (count == buffer.length)
+			flushBuffer();
+		buffer[count++] = (byte) oneByte;
+	}
+
+	@Override
+	public void write(byte[] data, int offset, int length) throws IOException {
+		if (finished)
+			throw new IOException("chunked stream already finished");
+		if (length >= buffer.length) {
+			// big enough to go out as its own chunk
+			flushBuffer();
+			writeChunk(data, offset, length);
+			return;
+		}
+		if (length > buffer.length - count)
+			flushBuffer();
+		System.arraycopy(data, offset, buffer, count, length);
+		count += length;
+	}
+
+	/**
+	 * Sends what has been collected so far as a chunk and flushes the underlying stream
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	/**
+	 * Sends anything still buffered followed by the terminating chunk
+	 *
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		if (finished)
+			return;
+		flushBuffer();
+		finished = true;
+		out.write(LAST_CHUNK);
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		finish();
+	}
+
+	private void flushBuffer() throws IOException {
+		if (count > 0) {
+			writeChunk(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	private void writeChunk(byte[] data, int offset, int length) throws IOException {
+		if (length == 0)
+			return;
+		out.write(Integer.toHexString(length).getBytes());
+		out.write(CRLF);
+		out.write(data, offset, length);
+		out.write(CRLF);
+	}
+}
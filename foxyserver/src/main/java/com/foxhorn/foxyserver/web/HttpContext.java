@@ -24,10 +24,17 @@ import com.foxhorn.foxyserver.FoxyServerSettings;
 import com.foxhorn.foxyserver.text.StringUtils;
 import com.foxhorn.foxyserver.web.api.IHttpAuthHandler;
 import com.foxhorn.foxyserver.web.api.IHttpAuthSession;
+import com.foxhorn.foxyserver.web.api.IHttpConnection;
+import com.foxhorn.foxyserver.web.api.IMultipartPartHandler;
 import com.foxhorn.foxyserver.web.hosting.HttpApplication;
 import com.foxhorn.foxyserver.web.hosting.handlers.BaseFoxyPathHandler;
+import com.foxhorn.foxyserver.web.hosting.routing.PathRouter;
+import com.foxhorn.foxyserver.web.hosting.routing.RouteMatch;
 
-import java.net.Socket;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This is encapsulation for a single HTTP request
@@ -36,22 +43,34 @@ import java.net.Socket;
 public class HttpContext implements Runnable {
 
 	private static final String Tag = "foxy-http-server";
+	private static final byte REQUEST_FAILED = 0;
+	private static final byte REQUEST_ANSWERED = 1;
+	private static final byte REQUEST_ASYNC = 2;
+	// what static files are served for when no handler takes the path
+	private static final int STATIC_FILE_VERBS = (1 << HttpRequest.REQUEST_VERB_GET) | (1 << HttpRequest.REQUEST_VERB_HEAD) | (1 << HttpRequest.REQUEST_VERB_POST);
 
-	private final HttpRequest request;
-	private final HttpResponse response;
-	private final Socket clientSocket;
+	private HttpRequest request;
+	private HttpResponse response;
+	private final IHttpConnection connection;
+	// lives as long as the connection so bytes read past one request are kept for the next
+	private final HttpRequestParser requestParser = new HttpRequestParser();
 	private final HttpApplication httpApplication;
+	// used again for every request on the connection so routing allocates nothing
+	private final RouteMatch routeMatch = new RouteMatch();
 
-	private String handlerLocalPath;
-	private String[] handlerLocalPathValues;
+	// the local path of the handler split without copying, used again for every request on the connection
+	private final PathSegments pathSegments = new PathSegments();
 	private final IHttpAuthHandler httpAuthHandler;
 	private IHttpAuthSession httpSession;
+	// set when the handler of the current request finishes its response later
+	private AsyncResponse asyncResponse;
+	// the worker leaving and the response being finished both flip this, whichever is second sends the response
+	private final AtomicBoolean asyncHandoff = new AtomicBoolean();
+	private volatile HttpResponse asyncFinishedResponse;
 
-	public HttpContext(Socket socket, HttpApplication application, IHttpAuthHandler httpAuthHandler) {
-		clientSocket = socket;
+	public HttpContext(IHttpConnection connection, HttpApplication application, IHttpAuthHandler httpAuthHandler) {
+		this.connection = connection;
 		this.httpAuthHandler = httpAuthHandler;
-		request = new HttpRequest(this);
-		response = new HttpResponse(this);
 		this.httpApplication = application;
 	}
 
@@ -63,8 +82,54 @@ public class HttpContext implements Runnable {
 		return request;
 	}
 
-	Socket getClientSocket() {
-		return clientSocket;
+	IHttpConnection getConnection() {
+		return connection;
+	}
+
+	HttpRequestParser getRequestParser() {
+		return requestParser;
+	}
+
+	/**
+	 * @return the body of the request as a stream or null if it had none, small bodies come from memory and big ones
+	 * from the temp file they were spilled to
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unused")
+	public InputStream getRequestBodyStream() throws IOException {
+		HttpRequestBody body = request.getBody();
+		return body == null ? null : body.getInputStream();
+	}
+
+	/**
+	 * @return the body of the request as a channel or null if it had none
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unused")
+	public ReadableByteChannel getRequestBodyChannel() throws IOException {
+		HttpRequestBody body = request.getBody();
+		return body == null ? null : body.getChannel();
+	}
+
+	/**
+	 * Decodes a multipart/form-data body handing each part to the handler as a stream as it goes. The body is read
+	 * straight off the connection so this can only be called once, and only while handling the request. If it is not
+	 * called, or fails part way, the connection is closed once the response is sent
+	 *
+	 * @param handler what takes the parts, DeviceFileSystemUploadSink writes files straight to the device
+	 * @throws IOException if the request is not multipart/form-data or its body is not well formed
+	 */
+	@SuppressWarnings("unused")
+	public void readMultipartBody(IMultipartPartHandler handler) throws IOException {
+		String boundary = MultipartParser.getBoundary(request.getHeader("Content-Type"));
+		if (boundary == null)
+			throw new IOException("request is not multipart/form-data");
+		HttpRequestParser.BodyInputStream in = request.takeConnectionBody();
+		if (in == null)
+			return;
+		new MultipartParser(in, boundary).parse(handler);
+		// anything after the closing boundary is epilogue
+		in.skipRest();
 	}
 
 	public HttpApplication getHttpApplication() {
@@ -78,7 +143,16 @@ public class HttpContext implements Runnable {
 	 */
 	@SuppressWarnings("unused")
 	public String getLocalPath() {
-		return handlerLocalPath;
+		return pathSegments.getLocalPath();
+	}
+
+	/**
+	 * The local path split into segments that can be compared and read as numbers without making strings of them
+	 *
+	 * @return the segments, empty if the request did not go to a handler
+	 */
+	public PathSegments getPathSegments() {
+		return pathSegments;
 	}
 
 	/**
@@ -91,15 +165,172 @@ public class HttpContext implements Runnable {
 	 * getPathPart(1) returns 1
 	 */
 	public String getPathPart(int pathPart) {
-		if (handlerLocalPathValues != null && pathPart < handlerLocalPathValues.length)
-			return handlerLocalPathValues[pathPart];
-		return null;
+		return pathSegments.segmentAsString(pathPart);
+	}
+
+	/**
+	 * Used to get a parameter of the route that matched
+	 *
+	 * @param name the name of the parameter, for the route /api/users/{id} this is id
+	 * @return the value or null if the route has no such parameter
+	 */
+	@SuppressWarnings("unused")
+	public String getPathParameter(String name) {
+		return routeMatch.getHandler() == null ? null : routeMatch.getParameter(name);
+	}
+
+	/**
+	 * Used to get a number parameter of the route that matched, such as {id:long}
+	 *
+	 * @param name the name of the parameter
+	 * @return the value or -1 if the route has no such parameter or it is not a number
+	 */
+	@SuppressWarnings("unused")
+	public long getPathParameterLong(String name) {
+		return routeMatch.getHandler() == null ? -1 : routeMatch.getParameterLong(name);
+	}
+
+	/**
+	 * Starts an async response for the current request with the default deadline, see startAsync(long)
+	 *
+	 * @return what to finish the response with
+	 */
+	@SuppressWarnings("unused")
+	public AsyncResponse startAsync() {
+		return startAsync(FoxyServerSettings.getInstance().getAsyncRequestTimeoutMillis());
 	}
 
+	/**
+	 * Call this from a handler to finish the response later from another thread. Once the handler returns the worker
+	 * goes back to the pool and the connection waits, the response is sent when the async response is completed or
+	 * the deadline passes
+	 *
+	 * @param timeoutMillis how long the handler has to complete the response
+	 * @return what to finish the response with
+	 */
+	public AsyncResponse startAsync(long timeoutMillis) {
+		if (asyncResponse != null)
+			throw new IllegalStateException("the response is already async");
+		final AsyncResponse started = new AsyncResponse(this, response);
+		started.setDeadline(httpApplication.scheduleDeadline(new Runnable() {
+			@Override
+			public void run() {
+				started.expire();
+			}
+		}, timeoutMillis));
+		asyncResponse = started;
+		return started;
+	}
+
+	/**
+	 * Closes the connection without serving it, used for a context still waiting for a worker when the server stops
+	 */
+	public void abandon() {
+		connection.close();
+	}
+
+	/**
+	 * Serves requests on our connection till the client asks to close, the connection limit is hit or it goes idle.
+	 * A pipelining client may have sent its next request along with the last one so the parser is checked before
+	 * waiting on the connection
+	 */
 	@Override
 	public void run() {
+		try {
+			serveRequests();
+		} catch (Exception e) {
+			e.printStackTrace();
+			connection.close();
+		}
+	}
+
+	private void serveRequests() {
+		int idleTimeoutMillis = FoxyServerSettings.getInstance().getKeepAliveTimeoutSeconds() * 1000;
+		do {
+			byte result = processRequest();
+			if (result == REQUEST_ASYNC) {
+				// the connection waits for the response without holding this worker, finishAsync picks it up again
+				if (!asyncHandoff.compareAndSet(false, true))
+					resumeAsync();
+				return;
+			}
+			if (result == REQUEST_FAILED)
+				break;
+			if (!response.isKeepAlive())
+				break;
+		} while (requestParser.hasBufferedInput() || connection.awaitNextRequest(idleTimeoutMillis));
+		// when awaitNextRequest returns false the connection is no longer ours to close
+		if (!response.isKeepAlive())
+			connection.close();
+	}
+
+	/**
+	 * Called once by the async response to send it and then carry on serving the connection on a worker. If the
+	 * worker that ran the handler has not left yet it sends it on its way out
+	 *
+	 * @param finished the response to send
+	 */
+	void finishAsync(HttpResponse finished) {
+		asyncFinishedResponse = finished;
+		if (!asyncHandoff.compareAndSet(false, true))
+			resumeAsync();
+	}
+
+	private void resumeAsync() {
+		final HttpResponse finished = asyncFinishedResponse;
+		boolean resumed = httpApplication.resume(connection, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					try {
+						finished.process();
+					} finally {
+						request.release();
+					}
+					if (!finished.isKeepAlive() || finished != response) {
+						// a response sent in place of the handler's means the handler may still be using this context
+						connection.close();
+						return;
+					}
+					int idleTimeoutMillis = FoxyServerSettings.getInstance().getKeepAliveTimeoutSeconds() * 1000;
+					if (requestParser.hasBufferedInput() || connection.awaitNextRequest(idleTimeoutMillis))
+						serveRequests();
+				} catch (Exception e) {
+					e.printStackTrace();
+					connection.close();
+				}
+			}
+		});
+		if (!resumed)
+			request.release();
+	}
+
+	/**
+	 * This processes a single request off of our connection
+	 *
+	 * @return REQUEST_ANSWERED if a request was read and answered, REQUEST_ASYNC if the handler will answer it later
+	 * or REQUEST_FAILED
+	 */
+	private byte processRequest() {
+		request = new HttpRequest(this);
+		response = new HttpResponse(this);
+		pathSegments.clear();
+		httpSession = null;
+		asyncResponse = null;
+		asyncFinishedResponse = null;
+		asyncHandoff.set(false);
 		try {
 			request.process();
+			if (request.getRequestedDocument() == null) {
+				// nothing we could understand came in
+				return REQUEST_FAILED;
+			}
+			int requestNumber = connection.incrementRequestCount();
+			// idle keep-alive connections hold a worker on the blocking engine so give it up if others are waiting
+			response.setKeepAlive(request.isKeepAliveRequested()
+					&& requestNumber < FoxyServerSettings.getInstance().getMaxRequestsPerConnection()
+					&& httpApplication.isRunning()
+					&& !httpApplication.hasQueuedWork());
 			//	Log.i(Tag, request.toString());
 			String authToken = request.getAuthToken();
 			//	Log.v(Tag, String.format("using request token:%s", authToken));
@@ -114,30 +345,69 @@ public class HttpContext implements Runnable {
 			if (needsSessionStart) {
 				httpSession = httpAuthHandler.createGuestAuthSession(this);
 			}
-
-			BaseFoxyPathHandler handler = httpApplication.findHandlerForPath(request.getRequestedDocument());
+			if (request.isBodyTooLarge()) {
+				Log.w(Tag, String.format("Turning away a %s byte body for %s", request.getContentLength(), request.getRequestedDocument()));
+				response.setKeepAlive(false);
+				response.setHttpStatus(HttpResponse.HTTP_STATUS_PAYLOAD_TOO_LARGE);
+				response.setReplyString("request body too large");
+				response.process();
+				return REQUEST_ANSWERED;
+			}
+			if (request.isVerbNotImplemented()) {
+				response.setHttpStatus(HttpResponse.HTTP_STATUS_NOT_IMPLEMENTED);
+				response.setReplyString("not implemented");
+				response.process();
+				return REQUEST_ANSWERED;
+			}
+			httpApplication.getRouter().find(request.getRequestVerb(), request.getRequestedDocument(), routeMatch);
+			BaseFoxyPathHandler handler = routeMatch.getHandler();
 			if (handler != null) {
 				// let the handler handle it
 				Log.d(Tag, String.format("Using custom request processor {%s} for path: %s", handler.getClass().getName(), request.getRequestedDocument()));
 
-				handlerLocalPath = request.getRequestedDocument().substring(handler.getPathHandled().length());
-				handlerLocalPathValues = handlerLocalPath.split(BaseFoxyPathHandler.PATH_PART_SEPARATOR);
+				pathSegments.reset(request.getRequestedDocument(), routeMatch.getLocalPathStart());
 				try {
 					handler.handleRequest(this);
 				} catch (Exception appError) {
 					appError.printStackTrace();
-					response.setReplyString(appError.toString());
-					response.setHttpStatus(500);
+					if (asyncResponse != null) {
+						asyncResponse.fail(appError);
+						return REQUEST_ASYNC;
+					}
+					if (response.isCommitted()) {
+						// part of a streamed body went out already so all we can do is cut it off
+						response.abortStream();
+					} else {
+						response.setReplyString(appError.toString());
+						response.setHttpStatus(500);
+					}
 				}
+				if (asyncResponse != null)
+					return REQUEST_ASYNC;
+			} else if (routeMatch.isMethodNotAllowed()) {
+				response.setHttpStatus(HttpResponse.HTTP_STATUS_METHOD_NOT_ALLOWED);
+				response.setHeader("Allow", PathRouter.describeVerbs(routeMatch.getAllowedVerbs()));
+				response.setReplyString("method not allowed");
+			} else if ((STATIC_FILE_VERBS & (1 << request.getRequestVerb())) == 0) {
+				response.setHttpStatus(HttpResponse.HTTP_STATUS_METHOD_NOT_ALLOWED);
+				response.setHeader("Allow", PathRouter.describeVerbs(STATIC_FILE_VERBS));
+				response.setReplyString("method not allowed");
 			} else {
 				// lets treat this as a normal file request
 				Log.d(Tag, "Using default request handler");
 				response.setReplyFile(request.getRequestedDocument());
 			}
 			response.process();
+			return REQUEST_ANSWERED;
 		} catch (Exception e) {
 
 			e.printStackTrace();
+			response.setKeepAlive(false);
+			return REQUEST_FAILED;
+		} finally {
+			// an async request is released once its response is sent
+			if (asyncResponse == null)
+				request.release();
 		}
 	}
 
@@ -148,15 +418,10 @@ public class HttpContext implements Runnable {
 	 */
 	@SuppressWarnings("unused")
 	public long getRequestedEntityId() {
-		String idStr = getPathPart(1);
-		if (StringUtils.isNullEmptyOrWhiteSpace(idStr))
-			return -1;
-		try {
-			return Long.valueOf(idStr);
-		} catch (NumberFormatException e) {
-			e.printStackTrace();
-			return -1;
-		}
+		// routes such as /api/users/{id} name it, otherwise it is the part after the action
+		if (routeMatch.getHandler() != null && routeMatch.hasParameter("id"))
+			return routeMatch.getParameterLong("id");
+		return pathSegments.segmentAsLong(1);
 	}
 
 	public IHttpAuthHandler getHttpAuthHandler() {
@@ -0,0 +1,206 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This holds every header a request came with. Only where each name and value sits in the raw request head is kept,
+ * a value is turned into a String the first time someone asks for it. Names are matched without regard to case and
+ * a header that was sent more than once keeps all of its values in the order they came
+ */
+public class HttpHeaders {
+
+	private static final int INITIAL_HEADER_CAPACITY = 16;
+	// name start, name end, value start, value end for each header
+	private static final int SLOTS_PER_HEADER = 4;
+
+	private final byte[] head;
+	private int[] offsets = new int[INITIAL_HEADER_CAPACITY * SLOTS_PER_HEADER];
+	private String[] values = new String[INITIAL_HEADER_CAPACITY];
+	private int count;
+
+	/**
+	 * Creates our headers
+	 *
+	 * @param head the raw request head the offsets point into
+	 */
+	HttpHeaders(byte[] head) {
+		this.head = head;
+	}
+
+	/**
+	 * Records a header, the value should already have its surrounding white space dropped
+	 */
+	void add(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+		if (count == values.length) {
+			int[] biggerOffsets = new int[offsets.length * 2];
+			System.arraycopy(offsets, 0, biggerOffsets, 0, offsets.length);
+			offsets = biggerOffsets;
+			String[] biggerValues = new String[values.length * 2];
+			System.arraycopy(values, 0, biggerValues, 0, values.length);
+			values = biggerValues;
+		}
+		int slot = count * SLOTS_PER_HEADER;
+		offsets[slot] = nameStart;
+		offsets[slot + 1] = nameEnd;
+		offsets[slot + 2] = valueStart;
+		offsets[slot + 3] = valueEnd;
+		count++;
+	}
+
+	/**
+	 * @return how many headers came with the request
+	 */
+	@SuppressWarnings("unused")
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @param index which header
+	 * @return the name as the client sent it
+	 */
+	@SuppressWarnings("unused")
+	public String getName(int index) {
+		int slot = index * SLOTS_PER_HEADER;
+		return latin1(offsets[slot], offsets[slot + 1]);
+	}
+
+	/**
+	 * @param index which header
+	 * @return the value with surrounding white space dropped
+	 */
+	public String getValue(int index) {
+		if (values[index] == null) {
+			int slot = index * SLOTS_PER_HEADER;
+			values[index] = latin1(offsets[slot + 2], offsets[slot + 3]);
+		}
+		return values[index];
+	}
+
+	/**
+	 * @param name the header name, case does not matter
+	 * @return the first value sent for the header or null if it was not sent
+	 */
+	public String get(String name) {
+		int index = indexOf(name, 0);
+		return index < 0 ? null : getValue(index);
+	}
+
+	/**
+	 * @param name the header name, case does not matter
+	 * @return every value sent for the header in the order they came, empty if it was not sent
+	 */
+	@SuppressWarnings("unused")
+	public List<String> getAll(String name) {
+		int index = indexOf(name, 0);
+		if (index < 0)
+			return Collections.emptyList();
+		List<String> all = new ArrayList<>(2);
+		while (index >= 0) {
+			all.add(getValue(index));
+			index = indexOf(name, index + 1);
+		}
+		return all;
+	}
+
+	/**
+	 * @param name the header name, case does not matter
+	 * @return true if the client sent the header at least once
+	 */
+	public boolean contains(String name) {
+		return indexOf(name, 0) >= 0;
+	}
+
+	/**
+	 * @param name      the header name, case does not matter
+	 * @param fromIndex the first header to look at
+	 * @return the index of the next header with that name or -1
+	 */
+	int indexOf(String name, int fromIndex) {
+		for (int index = fromIndex; index < count; index++) {
+			int slot = index * SLOTS_PER_HEADER;
+			if (regionEquals(offsets[slot], offsets[slot + 1], name))
+				return index;
+		}
+		return -1;
+	}
+
+	/**
+	 * Compares a value without making a String of it
+	 *
+	 * @param index    which header
+	 * @param expected the value to compare against, case does not matter
+	 * @return true if they match
+	 */
+	boolean valueEquals(int index, String expected) {
+		int slot = index * SLOTS_PER_HEADER;
+		return regionEquals(offsets[slot + 2], offsets[slot + 3], expected);
+	}
+
+	/**
+	 * Reads a value as a plain non negative number without making a String of it
+	 *
+	 * @param index which header
+	 * @return the number or -1 if the value is not one
+	 */
+	long valueAsLong(int index) {
+		int slot = index * SLOTS_PER_HEADER;
+		int from = offsets[slot + 2];
+		int to = offsets[slot + 3];
+		if (from == to || to - from > 18)
+			return -1;
+		long number = 0;
+		for (int i = from; i < to; i++) {
+			if (head[i] < '0' || head[i] > '9')
+				return -1;
+			number = number * 10 + head[i] - '0';
+		}
+		return number;
+	}
+
+	private boolean regionEquals(int from, int to, String expected) {
+		if (to - from != expected.length())
+			return false;
+		for (int i = 0; i < expected.length(); i++) {
+			int actual = head[from + i];
+			int wanted = expected.charAt(i);
+			if (actual != wanted && toLower(actual) != toLower(wanted))
+				return false;
+		}
+		return true;
+	}
+
+	private static int toLower(int value) {
+		return value >= 'A' && value <= 'Z' ? value + ('a' - 'A') : value;
+	}
+
+	/**
+	 * Header bytes are ISO-8859-1 so each byte is one char
+	 */
+	private String latin1(int from, int to) {
+		char[] chars = new char[to - from];
+		for (int i = from; i < to; i++)
+			chars[i - from] = (char) (head[i] & 0xff);
+		return new String(chars);
+	}
+}
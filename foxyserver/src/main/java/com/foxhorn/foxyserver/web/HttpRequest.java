@@ -21,11 +21,13 @@ package com.foxhorn.foxyserver.web;
 import android.util.Log;
 
 import com.foxhorn.foxyserver.Constants;
+import com.foxhorn.foxyserver.FoxyServerSettings;
+import com.foxhorn.foxyserver.text.HttpDateUtils;
 import com.foxhorn.foxyserver.text.StringUtils;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -37,172 +39,242 @@ import java.util.Map;
  */
 public class HttpRequest {
 
-	private static final String HEADER_SPLIT_ON = ":";
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+	private static final byte SPACE = ' ';
+	private static final byte TAB = '\t';
+	private static final byte COLON = ':';
+	private static final Charset BODY_CHARSET = Charset.forName("UTF-8");
+	private static final String HTTP_VERSION_1_0 = "HTTP/1.0";
+	private static final String HTTP_VERSION_1_1 = "HTTP/1.1";
+	private static final String CONNECTION_CLOSE = "close";
+	private static final String CONNECTION_KEEP_ALIVE = "keep-alive";
 	public static final byte REQUEST_VERB_GET = 1;
 	public static final byte REQUEST_VERB_POST = 2;
-	@SuppressWarnings("unused")
 	public static final byte REQUEST_VERB_HEAD = 3;
-	@SuppressWarnings("unused")
 	public static final byte REQUEST_VERB_PUT = 4;
-	@SuppressWarnings("unused")
 	public static final byte REQUEST_VERB_DELETE = 5;
-	@SuppressWarnings("unused")
 	public static final byte REQUEST_VERB_TRACE = 6;
-	@SuppressWarnings("unused")
 	public static final byte REQUEST_VERB_OPTIONS = 7;
-	@SuppressWarnings("unused")
 	public static final byte REQUEST_VERB_CONNECT = 8;
-	@SuppressWarnings("unused")
 	public static final byte REQUEST_VERB_PATCH = 9;
 	public static final String REQUEST_VERB_GET_NAME = "GET";
 	public static final String REQUEST_VERB_POST_NAME = "POST";
-	@SuppressWarnings("unused")
 	public static final String REQUEST_VERB_HEAD_NAME = "HEAD";
-	@SuppressWarnings("unused")
 	public static final String REQUEST_VERB_PUT_NAME = "PUT";
-	@SuppressWarnings("unused")
 	public static final String REQUEST_VERB_DELETE_NAME = "DELETE";
-	@SuppressWarnings("unused")
 	public static final String REQUEST_VERB_TRACE_NAME = "TRACE";
-	@SuppressWarnings("unused")
 	public static final String REQUEST_VERB_OPTIONS_NAME = "OPTIONS";
-	@SuppressWarnings("unused")
 	public static final String REQUEST_VERB_CONNECT_NAME = "CONNECT";
-	@SuppressWarnings("unused")
 	public static final String REQUEST_VERB_PATCH_NAME = "PATCH";
+	// indexed by the verb byte
+	private static final String[] REQUEST_VERB_NAMES = {
+			null,
+			REQUEST_VERB_GET_NAME,
+			REQUEST_VERB_POST_NAME,
+			REQUEST_VERB_HEAD_NAME,
+			REQUEST_VERB_PUT_NAME,
+			REQUEST_VERB_DELETE_NAME,
+			REQUEST_VERB_TRACE_NAME,
+			REQUEST_VERB_OPTIONS_NAME,
+			REQUEST_VERB_CONNECT_NAME,
+			REQUEST_VERB_PATCH_NAME
+	};
 
 
 	private List<Integer> requiredPermissions;
 	private byte requestVerb;
-	private String accepts;
-	private String userAgent;
-	private String requestedLanguage;
 	private String remoteHost;
 	private String requestedDocument;
+	private String httpVersion;
 	private int contentLength;
+	private HttpRequestBody body;
+	private boolean bodyTooLarge;
+	// a multipart/form-data body left on the connection for HttpContext.readMultipartBody
+	private HttpRequestParser.BodyInputStream connectionBody;
+	private boolean connectionBodyTaken;
 	private String requestBody;
 	private String authToken;
 	private String queryString;
 	private Map<String, String> queryParams;
 	private final HttpContext httpContext;
 	private Map<String, String> cookies;
+	private HttpHeaders headers;
 
 	public HttpRequest(HttpContext context) {
 		httpContext = context;
 	}
 
 	/**
-	 * This handles dealing with the request and making sense of its various parts
+	 * This handles dealing with the request and making sense of its various parts. The head is parsed straight from
+	 * the bytes read off the connection and the body is read as exactly Content-Length bytes
 	 */
-	@SuppressWarnings("ConstantConditions")
 	public void process() throws IOException {
-		BufferedReader inputReader = new BufferedReader(new InputStreamReader(httpContext.getClientSocket().getInputStream()));
-		String document;
-		boolean hasRequestType = false;
-		boolean hasRemoteHost = false;
-		boolean hasUserAgent = false;
-		boolean hasAccepts = false;
-		boolean hasLanguage = false;
-		boolean hasContentLength = false;
-		boolean hasCookies = false;
-		String[] parts;
-		char[] charBuffer = new char[128];
-		int bytesRead;
-		StringBuilder stringBuilder = new StringBuilder();
-		boolean moreToRead = true;
-		while (moreToRead && (bytesRead = inputReader.read(charBuffer)) > 0) {
-			stringBuilder.append(charBuffer, 0, bytesRead);
-			moreToRead = bytesRead == charBuffer.length;
-		}
-		String total = stringBuilder.toString();
-		String[] requestLines = total.split("\n");
-		//	System.err.println(total);
-		for (String requestHeaderLine : requestLines) {
-			//	System.out.printf(parts1[i]);
-			if (StringUtils.isNullEmptyOrWhiteSpace(requestHeaderLine)) {
+		HttpRequestParser parser = httpContext.getRequestParser();
+		InputStream inputStream = httpContext.getConnection().getInputStream();
+		byte[] head = parser.readHead(inputStream);
+		if (head == null)
+			return;
+		headers = new HttpHeaders(head);
+		int lineEnd = indexOf(head, LF, 0, head.length);
+		if (!parseRequestLine(head, 0, trimLineEnd(head, 0, lineEnd)))
+			return;
+		int lineStart = lineEnd + 1;
+		while (lineStart < head.length) {
+			lineEnd = indexOf(head, LF, lineStart, head.length);
+			int valueEnd = trimLineEnd(head, lineStart, lineEnd);
+			if (valueEnd == lineStart)
 				break;
+			int colon = indexOf(head, COLON, lineStart, valueEnd);
+			if (colon > lineStart)
+				addHeader(head, lineStart, colon, colon + 1, valueEnd);
+			lineStart = lineEnd + 1;
+		}
+		if (StringUtils.areEqual(requestedDocument, "/")) {
+			requestedDocument = "/index.html";
+		}
+		contentLength = readContentLength();
+		if (headers.contains("Transfer-Encoding")) {
+			// we can not read chunked request bodies so we would lose our place in the connection
+			Log.w(Constants.Tag, "request bodies with a Transfer-Encoding are not supported");
+			contentLength = -1;
+		}
+		String cookieHeader = headers.get("Cookie");
+		if (cookieHeader != null) {
+			cookies = CookieUtil.parseCookieString(cookieHeader);
+			if (cookies.containsKey(httpContext.getHttpAuthHandler().getAuthTokenName())) {
+				authToken = cookies.get(httpContext.getHttpAuthHandler().getAuthTokenName());
 			}
-
-			if (!hasRequestType) {
-				byte startIndex = 0;
-				boolean isRequestTypeAndPath = false;
-				if (requestHeaderLine.substring(0, 3).equals(REQUEST_VERB_GET_NAME)) {
-					requestVerb = REQUEST_VERB_GET;
-					startIndex = 4;
-					isRequestTypeAndPath = true;
-				} else if (requestHeaderLine.substring(0, 4).equals(REQUEST_VERB_POST_NAME)) {
-					requestVerb = REQUEST_VERB_POST;
-					startIndex = 5;
-					isRequestTypeAndPath = true;
-				} else {
-					Log.w(Constants.Tag, String.format("Have a request type of '%s' that is not a GET or a POST and is not supported. You can add support for it in the HttpRequest.process method.", requestHeaderLine));
-				}
-				if (isRequestTypeAndPath) {
-					hasRequestType = true;
-					int httpIndex = requestHeaderLine.indexOf(" HTTP/");
-					document = requestHeaderLine.substring(startIndex, httpIndex);
-					requestedDocument = document.replaceAll("[/]+", "/");
-					if (requestedDocument.contains("?")) {
-						// we have a query string handle it
-						parts = requestedDocument.split("\\?");
-						requestedDocument = parts[0];
-						if (parts.length > 1) {
-							queryString = parts[1];
-							queryParams = new HashMap<>();
-							parts = queryString.split("&");
-							for (String queryStringParam : parts) {
-								String[] paramParts = queryStringParam.split("=");
-								if (paramParts.length == 2)
-									queryParams.put(paramParts[0], paramParts[1]);
-							}
-						}
-					}
-				}
+		}
+		if (contentLength < 0) {
+			Log.w(Constants.Tag, "request had a bad Content-Length");
+			requestedDocument = null;
+			return;
+		}
+		FoxyServerSettings settings = FoxyServerSettings.getInstance();
+		boolean multipart = MultipartParser.getBoundary(headers.get("Content-Type")) != null;
+		if (contentLength > (multipart ? settings.getMaxMultipartBodyBytes() : settings.getMaxRequestBodyBytes())) {
+			// the body is left unread so the connection can not be used again
+			bodyTooLarge = true;
+			return;
+		}
+		if (contentLength > 0) {
+			if (multipart) {
+				// uploads are taken apart as they come off the connection, never held or spilled as a whole
+				connectionBody = parser.openBody(inputStream, contentLength);
 			} else {
-				// we have already gotten the first line
-				if (!hasRemoteHost && requestHeaderLine.length() >= 5 && requestHeaderLine.substring(0, 5).equals("Host:")) {
-					// this is the remote address
-					parts = requestHeaderLine.split(HEADER_SPLIT_ON);
-					// 0 = Host | 1 = ip | 2 = port
-					remoteHost = parts[1].substring(1);
-					hasRemoteHost = true;
-				}
-				if (!hasAccepts && requestHeaderLine.length() >= 7 && requestHeaderLine.substring(0, 7).equals("Accept:")) {
-					accepts = requestHeaderLine.split(HEADER_SPLIT_ON)[1].substring(1);
-					hasAccepts = true;
-				}
-				if (!hasUserAgent && requestHeaderLine.length() >= 11 && requestHeaderLine.substring(0, 11).equals("User-Agent:")) {
-					userAgent = requestHeaderLine.split(HEADER_SPLIT_ON)[1];
-					hasUserAgent = true;
-				}
-				if (!hasLanguage && requestHeaderLine.length() >= 16 && requestHeaderLine.substring(0, 16).equals("Accept-Language:")) {
-					requestedLanguage = requestHeaderLine.split(HEADER_SPLIT_ON)[1];
-					hasLanguage = true;
-				}
-				if (!hasContentLength && requestHeaderLine.length() >= 15 && requestHeaderLine.substring(0, 15).equals("Content-Length:")) {
-					contentLength = Integer.valueOf(requestHeaderLine.split(HEADER_SPLIT_ON)[1].substring(1).trim());
-					hasContentLength = true;
-				}
-				if (!hasCookies && requestHeaderLine.length() >= 7 && requestHeaderLine.substring(0, 7).equals("Cookie:")) {
-					Log.v("test", "have cookie");
-					hasCookies = true;
-					String rawCookie = requestHeaderLine.split(HEADER_SPLIT_ON)[1];
-					cookies = CookieUtil.parseCookieString(rawCookie);
-					if (cookies.containsKey(httpContext.getHttpAuthHandler().getAuthTokenName())) {
-						Log.v("test", "have auth token");
-						authToken = cookies.get(httpContext.getHttpAuthHandler().getAuthTokenName());
-					}
+				// always read the body even if nobody wants it so the next request on the connection starts in the right place
+				body = parser.readBody(inputStream, contentLength, settings.getRequestBodyMemoryThresholdBytes(), httpContext.getHttpApplication().getRequestBodySpillDirectory());
+			}
+		}
+	}
+
+	/**
+	 * Works out the verb, document, query string and http version from the first line of the request
+	 *
+	 * @return true if it was a request we know how to handle
+	 */
+	private boolean parseRequestLine(byte[] head, int from, int to) {
+		int verbEnd = indexOf(head, SPACE, from, to);
+		int targetEnd = verbEnd < 0 ? -1 : indexOf(head, SPACE, verbEnd + 1, to);
+		if (targetEnd < 0) {
+			Log.w(Constants.Tag, String.format("Have a request line of '%s' that could not be understood.", latin1(head, from, to)));
+			return false;
+		}
+		requestVerb = 0;
+		for (byte verb = 1; verb < REQUEST_VERB_NAMES.length; verb++) {
+			if (regionEquals(head, from, verbEnd, REQUEST_VERB_NAMES[verb])) {
+				requestVerb = verb;
+				break;
+			}
+		}
+		if (requestVerb == 0) {
+			// still read the rest of the request so it can be answered with a 501 and the connection kept
+			Log.w(Constants.Tag, String.format("Have a request type of '%s' that is not supported.", latin1(head, from, verbEnd)));
+		}
+		httpVersion = latin1(head, targetEnd + 1, to).trim();
+		String document = latin1(head, verbEnd + 1, targetEnd);
+		requestedDocument = document.replaceAll("[/]+", "/");
+		if (requestedDocument.contains("?")) {
+			// we have a query string handle it
+			String[] parts = requestedDocument.split("\\?");
+			requestedDocument = parts[0];
+			if (parts.length > 1) {
+				queryString = parts[1];
+				queryParams = new HashMap<>();
+				parts = queryString.split("&");
+				for (String queryStringParam : parts) {
+					String[] paramParts = queryStringParam.split("=");
+					if (paramParts.length == 2)
+						queryParams.put(paramParts[0], paramParts[1]);
 				}
 			}
 		}
-		if (StringUtils.areEqual(requestedDocument, "/")) {
-			requestedDocument = "/index.html";
+		return true;
+	}
+
+	/**
+	 * Records where a header sits in the head, nothing is turned into a String here
+	 */
+	private void addHeader(byte[] head, int nameStart, int nameEnd, int valueStart, int valueEnd) {
+		while (valueStart < valueEnd && (head[valueStart] == SPACE || head[valueStart] == TAB))
+			valueStart++;
+		while (valueEnd > valueStart && (head[valueEnd - 1] == SPACE || head[valueEnd - 1] == TAB))
+			valueEnd--;
+		headers.add(nameStart, nameEnd, valueStart, valueEnd);
+	}
+
+	/**
+	 * @return the Content-Length, 0 if none was sent or -1 if one is not a number or they disagree
+	 */
+	private int readContentLength() {
+		int index = headers.indexOf("Content-Length", 0);
+		if (index < 0)
+			return 0;
+		long length = headers.valueAsLong(index);
+		while ((index = headers.indexOf("Content-Length", index + 1)) >= 0) {
+			if (headers.valueAsLong(index) != length)
+				return -1;
+		}
+		return length > Integer.MAX_VALUE ? -1 : (int) length;
+	}
+
+	private static int indexOf(byte[] data, byte value, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (data[i] == value)
+				return i;
 		}
-		if (requestVerb == REQUEST_VERB_POST && contentLength > 0) {
-			requestBody = total.substring(total.length() - contentLength).trim();
+		return -1;
+	}
+
+	/**
+	 * @return where the line ending at the given line feed stops once any CR is dropped
+	 */
+	private static int trimLineEnd(byte[] data, int lineStart, int lineFeed) {
+		int end = lineFeed < 0 ? data.length : lineFeed;
+		if (end > lineStart && data[end - 1] == CR)
+			end--;
+		return end;
+	}
+
+	private static boolean regionEquals(byte[] data, int from, int to, String expected) {
+		if (to - from != expected.length())
+			return false;
+		for (int i = 0; i < expected.length(); i++) {
+			if (data[from + i] != expected.charAt(i))
+				return false;
 		}
-		//System.err.println("done reading request");
-		//	*/
+		return true;
+	}
+
+	/**
+	 * Header bytes are ISO-8859-1 so each byte is one char
+	 */
+	private static String latin1(byte[] data, int from, int to) {
+		char[] chars = new char[to - from];
+		for (int i = from; i < to; i++)
+			chars[i - from] = (char) (data[i] & 0xff);
+		return new String(chars);
 	}
 
 	/**
@@ -225,6 +297,12 @@ public class HttpRequest {
 	 */
 	@SuppressWarnings("unused")
 	public String getRemoteHost() {
+		if (remoteHost == null) {
+			String host = getHeader("Host");
+			// drop the port
+			if (host != null)
+				remoteHost = host.indexOf(':') < 0 ? host : host.substring(0, host.indexOf(':'));
+		}
 		return remoteHost;
 	}
 
@@ -233,7 +311,7 @@ public class HttpRequest {
 	 */
 	@SuppressWarnings("unused")
 	public String getRequestedLanguage() {
-		return requestedLanguage;
+		return getHeader("Accept-Language");
 	}
 
 	/**
@@ -241,7 +319,7 @@ public class HttpRequest {
 	 */
 	@SuppressWarnings("unused")
 	public String getUserAgent() {
-		return userAgent;
+		return getHeader("User-Agent");
 	}
 
 	/**
@@ -249,13 +327,12 @@ public class HttpRequest {
 	 */
 	@SuppressWarnings("unused")
 	public String getAccepts() {
-		return accepts;
+		return getHeader("Accept");
 	}
 
 	/**
-	 * @return the verb used for the request
+	 * @return the verb used for the request, 0 if it is not one we know
 	 */
-	@SuppressWarnings("unused")
 	public byte getRequestVerb() {
 		return requestVerb;
 	}
@@ -269,25 +346,224 @@ public class HttpRequest {
 	}
 
 	/**
+	 * @return the http version the client spoke ie HTTP/1.1
+	 */
+	@SuppressWarnings("unused")
+	public String getHttpVersion() {
+		return httpVersion;
+	}
+
+	/**
+	 * @return true if the client spoke HTTP/1.1 and so understands things like chunked encoding
+	 */
+	public boolean isHttp11() {
+		return HTTP_VERSION_1_1.equals(httpVersion);
+	}
+
+	/**
+	 * HTTP/1.1 clients keep the connection open unless they send Connection: close, HTTP/1.0 clients only do so if
+	 * they send Connection: keep-alive
+	 *
+	 * @return true if the client would like to reuse this connection for its next request
+	 */
+	public boolean isKeepAliveRequested() {
+		int connection = headers == null ? -1 : headers.indexOf("Connection", 0);
+		if (connection >= 0 && headers.valueEquals(connection, CONNECTION_CLOSE))
+			return false;
+		if (HTTP_VERSION_1_0.equals(httpVersion))
+			return connection >= 0 && headers.valueEquals(connection, CONNECTION_KEEP_ALIVE);
+		return httpVersion != null;
+	}
+
+	/**
+	 * @return every header the request came with or null if the request could not be read
+	 */
+	@SuppressWarnings("unused")
+	public HttpHeaders getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * @param name the header name, case does not matter
+	 * @return the first value sent for the header or null if it was not sent
+	 */
+	public String getHeader(String name) {
+		return headers == null ? null : headers.get(name);
+	}
+
+	/**
+	 * Checks the conditional headers against what we have. If-None-Match wins when it is sent, otherwise
+	 * If-Modified-Since is checked to the second
+	 *
+	 * @param entityTag    the quoted ETag of what we would send or null
+	 * @param lastModified when what we would send last changed in millis or -1
+	 * @return true if the client already has what we would send
+	 */
+	public boolean isNotModified(String entityTag, long lastModified) {
+		String ifNoneMatch = getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			if (entityTag == null)
+				return false;
+			for (String candidate : ifNoneMatch.split(",")) {
+				candidate = candidate.trim();
+				// weak comparison so a W/ prefix does not matter
+				if (candidate.startsWith("W/"))
+					candidate = candidate.substring(2);
+				if (candidate.equals("*") || candidate.equals(entityTag))
+					return true;
+			}
+			return false;
+		}
+		if (lastModified < 0)
+			return false;
+		long ifModifiedSince = HttpDateUtils.parse(getHeader("If-Modified-Since"));
+		return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+	}
+
+	/**
+	 * @return the raw Accept-Encoding header the client sent or null if it sent none
+	 */
+	@SuppressWarnings("unused")
+	public String getAcceptEncoding() {
+		return getHeader("Accept-Encoding");
+	}
+
+	/**
+	 * Checks the Accept-Encoding header to see if the client can take a body in the given content coding. A coding
+	 * (or *) listed with q=0 is treated as refused
+	 *
+	 * @param contentCoding the coding to check for ie gzip or br
+	 * @return true if the client listed the coding (or *) with a non zero quality
+	 */
+	public boolean acceptsEncoding(String contentCoding) {
+		String acceptEncoding = getHeader("Accept-Encoding");
+		if (acceptEncoding == null)
+			return false;
+		boolean acceptedByWildcard = false;
+		for (String coding : acceptEncoding.split(",")) {
+			String[] codingParts = coding.split(";");
+			String name = codingParts[0].trim();
+			boolean refused = false;
+			for (int i = 1; i < codingParts.length; i++) {
+				String parameter = codingParts[i].trim();
+				if (parameter.startsWith("q=")) {
+					try {
+						refused = Float.parseFloat(parameter.substring(2).trim()) <= 0;
+					} catch (NumberFormatException e) {
+						refused = true;
+					}
+				}
+			}
+			if (name.equalsIgnoreCase(contentCoding))
+				return !refused;
+			if (name.equals("*"))
+				acceptedByWildcard = !refused;
+		}
+		return acceptedByWildcard;
+	}
+
+	/**
+	 * The body is only turned into a string the first time this is called so handlers that take big bodies should use
+	 * getBody and read it as a stream instead
+	 *
 	 * @return the data in the body of the request
 	 */
 	@SuppressWarnings("unused")
 	public String getRequestBody() {
+		if (requestBody == null && body != null) {
+			try {
+				requestBody = new String(body.getBytes(), BODY_CHARSET).trim();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
 		return requestBody;
 	}
 
+	/**
+	 * @return the raw bytes of the body of the request or null if it had none
+	 */
+	@SuppressWarnings("unused")
+	public byte[] getRequestBodyBytes() {
+		if (body == null)
+			return null;
+		try {
+			return body.getBytes();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @return the body of the request which can be read as a stream or channel, or null if it had none
+	 */
+	public HttpRequestBody getBody() {
+		return body;
+	}
+
+	/**
+	 * @return true if the request used a verb we do not know, it should be answered with a 501
+	 */
+	public boolean isVerbNotImplemented() {
+		return requestVerb == 0;
+	}
+
+	/**
+	 * @param verb one of the REQUEST_VERB_ bytes
+	 * @return the name of the verb as it is sent, or null if it is not one we know
+	 */
+	public static String getVerbName(byte verb) {
+		return verb > 0 && verb < REQUEST_VERB_NAMES.length ? REQUEST_VERB_NAMES[verb] : null;
+	}
+
+	/**
+	 * @return true if the Content-Length was over the max request body size so the body was never read
+	 */
+	public boolean isBodyTooLarge() {
+		return bodyTooLarge;
+	}
+
+	/**
+	 * Hands out a multipart/form-data body that was left on the connection, it can only be taken once
+	 *
+	 * @return the body or null if there is none on the connection
+	 * @throws IOException if it was already taken
+	 */
+	HttpRequestParser.BodyInputStream takeConnectionBody() throws IOException {
+		if (connectionBodyTaken)
+			throw new IOException("the request body was already read");
+		connectionBodyTaken = true;
+		return connectionBody;
+	}
+
+	/**
+	 * @return true if a body left on the connection was not read to its end, the connection can not be used again
+	 */
+	boolean hasUnreadBody() {
+		return connectionBody != null && !connectionBody.isFinished();
+	}
+
+	/**
+	 * Frees anything the body holds on to once the request is done
+	 */
+	void release() {
+		if (body != null)
+			body.release();
+	}
+
 	/**
 	 * @return a useful (for debugging) clean readable selection of details about the request
 	 */
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
-		sb.append(String.format("%s performed a %S for %s\r\n", remoteHost, requestVerb == REQUEST_VERB_GET ? REQUEST_VERB_GET_NAME : REQUEST_VERB_POST_NAME, requestedDocument));
-		sb.append(String.format("languate: %s\r\n", requestedLanguage));
-		sb.append(String.format("user-agent: %s\r\n", userAgent));
-		sb.append(String.format("accepts: %s\r\n", accepts));
+		sb.append(String.format("%s performed a %S for %s\r\n", getRemoteHost(), getVerbName(requestVerb), requestedDocument));
+		sb.append(String.format("languate: %s\r\n", getRequestedLanguage()));
+		sb.append(String.format("user-agent: %s\r\n", getUserAgent()));
+		sb.append(String.format("accepts: %s\r\n", getAccepts()));
 		if (contentLength > 0) {
-			sb.append(String.format("body: %s\r\n", requestBody));
+			sb.append(String.format("body: %s\r\n", getRequestBody()));
 		}
 		if (!StringUtils.isNullEmptyOrWhiteSpace(queryString)) {
 			sb.append(String.format("query string: %s parsed as:\r\n", queryString));
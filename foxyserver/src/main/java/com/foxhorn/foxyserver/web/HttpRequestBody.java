@@ -0,0 +1,121 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web;
+
+import android.util.Log;
+
+import com.foxhorn.foxyserver.Constants;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * This is the body a request came with. Small bodies are held in memory, bodies over the memory threshold were
+ * spilled to a temp file as they came in so they never sit in the heap. Either way they can be read as many times as
+ * needed as a stream or a channel. The temp file is deleted once the request is done
+ */
+public class HttpRequestBody {
+
+	private final byte[] data;
+	private final File spillFile;
+	private final long length;
+
+	HttpRequestBody(byte[] data) {
+		this.data = data;
+		spillFile = null;
+		length = data.length;
+	}
+
+	HttpRequestBody(File spillFile, long length) {
+		data = null;
+		this.spillFile = spillFile;
+		this.length = length;
+	}
+
+	/**
+	 * @return how many bytes the body holds
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @return true if the body is held in memory, false if it was spilled to a temp file
+	 */
+	@SuppressWarnings("unused")
+	public boolean isInMemory() {
+		return data != null;
+	}
+
+	/**
+	 * @return a new stream over the whole body, the caller should close it
+	 * @throws IOException
+	 */
+	public InputStream getInputStream() throws IOException {
+		if (data != null)
+			return new ByteArrayInputStream(data);
+		return new FileInputStream(spillFile);
+	}
+
+	/**
+	 * @return a new channel over the whole body, the caller should close it
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unused")
+	public ReadableByteChannel getChannel() throws IOException {
+		if (data != null)
+			return Channels.newChannel(new ByteArrayInputStream(data));
+		return new FileInputStream(spillFile).getChannel();
+	}
+
+	/**
+	 * Pulls the whole body into memory, for a spilled body this reads the temp file so only do it if you have to
+	 *
+	 * @return the bytes of the body
+	 * @throws IOException
+	 */
+	public byte[] getBytes() throws IOException {
+		if (data != null)
+			return data;
+		if (length > Integer.MAX_VALUE)
+			throw new IOException("request body is too big to hold in memory");
+		byte[] bytes = new byte[(int) length];
+		DataInputStream in = new DataInputStream(new FileInputStream(spillFile));
+		try {
+			in.readFully(bytes);
+		} finally {
+			in.close();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Deletes the temp file if the body was spilled
+	 */
+	void release() {
+		if (spillFile != null && spillFile.exists() && !spillFile.delete())
+			Log.w(Constants.Tag, String.format("could not delete request body temp file %s", spillFile));
+	}
+}
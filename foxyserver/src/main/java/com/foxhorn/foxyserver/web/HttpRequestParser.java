@@ -0,0 +1,242 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web;
+
+import android.util.Log;
+
+import com.foxhorn.foxyserver.Constants;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads requests off a connection a byte at a time through a small state machine. The head (request line and headers)
+ * is read till the blank line that ends it, however the bytes happen to be split up by the network, and the body is
+ * then read as exactly Content-Length bytes. Anything read past the end of a request is kept for the next one so one
+ * of these lives as long as the connection it reads from
+ */
+class HttpRequestParser {
+
+	static final int MAX_HEAD_BYTES = 16384;
+	private static final int SPILL_CHUNK_SIZE = 8192;
+
+	private final byte[] buffer = new byte[MAX_HEAD_BYTES];
+	// the bytes we have read but not handed out yet
+	private int start;
+	private int end;
+	// where the scan for the end of the head picks up after the next read
+	private int scanIndex;
+	// bytes seen on the current head line not counting CR, a line feed after none ends the head
+	private int lineLength;
+	private boolean sawRequestLine;
+
+	/**
+	 * Reads till the blank line that ends the request head
+	 *
+	 * @param in the stream of the connection
+	 * @return the head bytes including the blank line, or null if the connection ended or the head was too big
+	 * @throws IOException
+	 */
+	byte[] readHead(InputStream in) throws IOException {
+		scanIndex = start;
+		lineLength = 0;
+		sawRequestLine = false;
+		while (true) {
+			for (; scanIndex < end; scanIndex++) {
+				byte current = buffer[scanIndex];
+				if (current == '\n') {
+					if (lineLength > 0) {
+						sawRequestLine = true;
+						lineLength = 0;
+					} else if (!sawRequestLine) {
+						// clients may send stray line breaks between requests
+						start = scanIndex + 1;
+					} else {
+						byte[] head = Arrays.copyOfRange(buffer, start, scanIndex + 1);
+						start = scanIndex + 1;
+						return head;
+					}
+				} else if (current != '\r') {
+					lineLength++;
+				}
+			}
+			if (start > 0) {
+				// slide what we have to the front to make room
+				System.arraycopy(buffer, start, buffer, 0, end - start);
+				end -= start;
+				scanIndex -= start;
+				start = 0;
+			}
+			if (end == buffer.length) {
+				Log.w(Constants.Tag, String.format("request head is bigger than %s bytes", MAX_HEAD_BYTES));
+				start = end = 0;
+				return null;
+			}
+			int count = in.read(buffer, end, buffer.length - end);
+			if (count == -1) {
+				if (end > start)
+					Log.w(Constants.Tag, "connection ended part way through a request head");
+				start = end = 0;
+				return null;
+			}
+			end += count;
+		}
+	}
+
+	/**
+	 * Reads the body that follows the head just read. Bodies up to the memory threshold are kept in memory, bigger
+	 * ones are written to a temp file as they arrive
+	 *
+	 * @param in              the stream of the connection
+	 * @param length          the Content-Length of the request
+	 * @param memoryThreshold the biggest body to keep in memory
+	 * @param spillDirectory  where bigger bodies are written
+	 * @return the body holding exactly length bytes
+	 * @throws IOException if the connection ends before the whole body arrives
+	 */
+	HttpRequestBody readBody(InputStream in, long length, int memoryThreshold, File spillDirectory) throws IOException {
+		if (length <= memoryThreshold) {
+			byte[] body = new byte[(int) length];
+			int filled = takeBuffered(body, 0, body.length);
+			while (filled < length) {
+				int count = in.read(body, filled, body.length - filled);
+				if (count == -1)
+					throw new EOFException(String.format("connection ended after %s of %s body bytes", filled, length));
+				filled += count;
+			}
+			return new HttpRequestBody(body);
+		}
+		File spillFile = File.createTempFile("foxy-body", ".tmp", spillDirectory);
+		boolean complete = false;
+		FileOutputStream out = new FileOutputStream(spillFile);
+		try {
+			byte[] chunk = new byte[SPILL_CHUNK_SIZE];
+			long filled = 0;
+			while (filled < length) {
+				int wanted = (int) Math.min(chunk.length, length - filled);
+				int count = takeBuffered(chunk, 0, wanted);
+				if (count == 0)
+					count = in.read(chunk, 0, wanted);
+				if (count == -1)
+					throw new EOFException(String.format("connection ended after %s of %s body bytes", filled, length));
+				out.write(chunk, 0, count);
+				filled += count;
+			}
+			complete = true;
+		} finally {
+			out.close();
+			if (!complete && !spillFile.delete())
+				Log.w(Constants.Tag, String.format("could not delete request body temp file %s", spillFile));
+		}
+		return new HttpRequestBody(spillFile, length);
+	}
+
+	/**
+	 * Hands out the body that follows the head just read as a stream straight off the connection, for bodies that are
+	 * taken apart as they arrive rather than held in memory or spilled. Nothing past length bytes is read so the next
+	 * request is left where it was
+	 *
+	 * @param in     the stream of the connection
+	 * @param length the Content-Length of the request
+	 * @return the body
+	 */
+	BodyInputStream openBody(InputStream in, long length) {
+		return new BodyInputStream(in, length);
+	}
+
+	/**
+	 * Hands out bytes that were read along with the head
+	 *
+	 * @return how many were copied
+	 */
+	private int takeBuffered(byte[] target, int offset, int length) {
+		int count = Math.min(length, end - start);
+		System.arraycopy(buffer, start, target, offset, count);
+		start += count;
+		return count;
+	}
+
+	/**
+	 * @return true if bytes of the next request were read along with the last one
+	 */
+	boolean hasBufferedInput() {
+		return end > start;
+	}
+
+	/**
+	 * A body read straight off the connection, it ends after Content-Length bytes and closing it leaves the connection
+	 * open
+	 */
+	class BodyInputStream extends InputStream {
+		private final InputStream in;
+		private final long length;
+		private long remaining;
+
+		BodyInputStream(InputStream in, long length) {
+			this.in = in;
+			this.length = length;
+			remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] target, int offset, int count) throws IOException {
+			if (remaining == 0)
+				return -1;
+			if (count == 0)
+				return 0;
+			int wanted = (int) Math.min(count, remaining);
+			int read = takeBuffered(target, offset, wanted);
+			if (read == 0)
+				read = in.read(target, offset, wanted);
+			if (read == -1)
+				throw new EOFException(String.format("connection ended after %s of %s body bytes", length - remaining, length));
+			remaining -= read;
+			return read;
+		}
+
+		/**
+		 * Reads past whatever is left so the next request on the connection starts in the right place
+		 *
+		 * @throws IOException
+		 */
+		void skipRest() throws IOException {
+			byte[] discard = new byte[SPILL_CHUNK_SIZE];
+			while (read(discard, 0, discard.length) != -1) {
+				// nothing to keep
+			}
+		}
+
+		/**
+		 * @return true once all of the body was read
+		 */
+		boolean isFinished() {
+			return remaining == 0;
+		}
+	}
+}
@@ -21,16 +21,29 @@ package com.foxhorn.foxyserver.web;
 import android.util.Log;
 
 import com.foxhorn.foxyserver.Constants;
+import com.foxhorn.foxyserver.FoxyServerSettings;
+import com.foxhorn.foxyserver.text.HttpDateUtils;
 import com.foxhorn.foxyserver.text.StringUtils;
+import com.foxhorn.foxyserver.web.api.IFileMetadata;
+import com.foxhorn.foxyserver.web.api.IFileResolver;
+import com.foxhorn.foxyserver.web.hosting.CacheControlPolicy;
+import com.foxhorn.foxyserver.web.hosting.pack.AssetManifest;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * This handles interaction with our responses
@@ -42,6 +55,7 @@ public class HttpResponse {
 	public static final int HTTP_STATUS_MOVED_PERMANENTLY = 301;
 	public static final int HTTP_STATUS_FOUND = 302;
 	public static final int HTTP_STATUS_SEE_OTHER = 303;
+	public static final int HTTP_STATUS_NOT_MODIFIED = 304;
 	public static final int HTTP_STATUS_TEMPORY_REDIREC = 307;
 
 	@SuppressWarnings("unused")
@@ -52,31 +66,66 @@ public class HttpResponse {
 	public static final int HTTP_STATUS_FORBIDDEN = 403;
 	@SuppressWarnings("unused")
 	public static final int HTTP_STATUS_NOT_FOUND = 404;
-	@SuppressWarnings("unused")
 	public static final int HTTP_STATUS_METHOD_NOT_ALLOWED = 405;
 	@SuppressWarnings("unused")
 	public static final int HTTP_STATUS_LENGTH_REQUIRED = 411;
+	public static final int HTTP_STATUS_PAYLOAD_TOO_LARGE = 413;
 	@SuppressWarnings("unused")
 	public static final int HTTP_STATUS_TEAPOT = 418;
 	public static final int HTTP_STATUS_INTERNAL_SERVER_ERROR = 500;
-	public static final int HTTP_STATUS_NOT_IMPLEMENTED = 401;
+	public static final int HTTP_STATUS_NOT_IMPLEMENTED = 501;
+	public static final int HTTP_STATUS_SERVICE_UNAVAILABLE = 503;
+	public static final int HTTP_STATUS_GATEWAY_TIMEOUT = 504;
 
 
 	private static final boolean DEBUG_AUTH = true;
 	private static final String HEADER_Location = "Location";
+	private static final String HEADER_CONNECTION = "Connection";
+	private static final String HEADER_KEEP_ALIVE = "Keep-Alive";
+	private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+	private static final String HEADER_CONTENT_TYPE = "Content-Type";
+	private static final String HEADER_TRANSFER_ENCODING = "Transfer-Encoding";
+	private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+	private static final String HEADER_VARY = "Vary";
+	private static final String HEADER_ETAG = "ETag";
+	private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+	private static final String HEADER_EXPIRES = "Expires";
+	private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+	// precompressed siblings we look for next to a static file, best first
+	private static final String GZIP_ENCODING = "gzip";
+	private static final String[] PRECOMPRESSED_ENCODINGS = {"br", GZIP_ENCODING};
+	private static final String[] PRECOMPRESSED_EXTENSIONS = {".br", ".gz"};
+	private static final int TRANSFER_BUFFER_SIZE = 8192;
+	private static final String STREAM_CHARSET = "utf-8";
+	// a fingerprinted file never changes under its name
+	private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+	private static final long IMMUTABLE_MAX_AGE_MILLIS = 31536000000L;
+	// reused by every response a worker thread sends
+	private static final ThreadLocal<byte[]> TRANSFER_BUFFER = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[TRANSFER_BUFFER_SIZE];
+		}
+	};
 
 	private Map<String, String> headers;
 	private int httpStatus;
-	private static final String MIME_JSON = "application/json";
 	private String contentType;
+	private MimeType mimeType;
 	private String body;
 	private boolean bodyIsFilePath;
 	private byte[] rawReply;
-	private int contentLength;
+	private long contentLength;
+	private boolean chunked;
 	private final HttpContext httpContext;
 	private boolean wasProcessed;
 	private byte[] extraDataForReply;
 	private String authToken;
+	private boolean keepAlive;
+	// set once the handler asked to stream the body, the headers have been sent by then
+	private StreamingOutputStream streamOutputStream;
+	private Writer streamWriter;
+	private boolean streamAborted;
 
 	/**
 	 * Creates our response object for the context that will process it
@@ -87,63 +136,6 @@ public class HttpResponse {
 		this.httpContext = httpContext;
 		headers = new HashMap<>();
 		headers.put("Server", "Foxy Android Webserver/0.9");
-		headers.put("Connection", "close");
-	}
-
-	/**
-	 * This will try to set the content type based on the file extension
-	 */
-	private void setContentTypeFromExtension() {
-		int index = body.lastIndexOf(".");
-		if (index == -1) {
-			contentType = "text/html";
-			return;
-		}
-
-		String extension = body.substring(index + 1);
-		Log.v(Constants.Tag, String.format("Requesting file %s with extension of %s", body, extension));
-		switch (extension) {
-			case "js":
-				contentType = "text/javascript";
-				break;
-			case "css":
-				contentType = "text/css";
-				break;
-			case "png":
-				contentType = "image/png";
-				break;
-			case "svg":
-				contentType = "image/svg+xml";
-				break;
-			case "gif":
-				contentType = "image/gif";
-				break;
-			case "jpg":
-			case "jpeg":
-				contentType = "image/jpeg";
-				break;
-			case "woff":
-				contentType = "application/font-woff";
-				break;
-			case "html":
-				contentType = "text/html";
-				break;
-			case "map":
-				contentType = "application/json";
-				break;
-			case "ttf":
-				contentType = "application/x-font-ttf";
-				break;
-			case "otf":
-				contentType = "application/x-font-opentype";
-				break;
-			case "eot":
-				contentType = "application/vnd.ms-fontobject";
-				break;
-			default:
-				contentType = "text/plain";
-				break;
-		}
 	}
 
 	/**
@@ -153,36 +145,62 @@ public class HttpResponse {
 		if (wasProcessed)
 			return;
 		wasProcessed = true;
+		if (httpContext.getRequest().hasUnreadBody()) {
+			// what is left of an upload is still in the way of the next request
+			keepAlive = false;
+		}
+		if (streamOutputStream != null) {
+			finishStream();
+			return;
+		}
 		try {
 			// if no status code has been set yet default to status code 200 ie all good
 			if (httpStatus == 0) {
 				httpStatus = HTTP_STATUS_OK;
 			}
+			if (httpStatus == HTTP_STATUS_OK)
+				applyCacheControlPolicy();
 			if (rawReply != null) {
 				// this will be a binary response
 				if (StringUtils.isNullEmptyOrWhiteSpace(contentType)) {
-					contentType = "raw";
+					setContentType("raw");
 				}
 				try {
-					OutputStream outputStream = httpContext.getClientSocket().getOutputStream();
-					contentLength = rawReply.length;
-					outputStream.write(getHeaders().getBytes());
-					outputStream.write(rawReply);
-					outputStream.flush();
+					sendDynamicBody(rawReply);
 					return;
 				} catch (IOException e) {
+					keepAlive = false;
 					e.printStackTrace();
 				}
 			} else if (bodyIsFilePath) { // body is a file path
 				// we will write a file to the output stream
+				IFileResolver fileResolver = httpContext.getHttpApplication().getFileResolver();
+				IFileMetadata fileMetadata = fileResolver instanceof IFileMetadata ? (IFileMetadata) fileResolver : null;
+				// every look at the file uses the same language so a resolver, or a cache in front of it, sees one name
+				String language = httpContext.getResponseLanguage();
 				if (StringUtils.isNullEmptyOrWhiteSpace(contentType)) {
-					setContentTypeFromExtension();
+					// the resolver may have worked the type out already, the type is always the one of the file asked for
+					MimeType fileMimeType = fileMetadata == null ? null : fileMetadata.getMimeType(body, language);
+					setMimeType(fileMimeType != null ? fileMimeType : MimeTypeRegistry.getInstance().forFile(body));
 				}
-				BufferedInputStream fileInputStream;
+				InputStream fileInputStream;
+				long fileLength;
+				AssetManifest assetManifest = httpContext.getHttpApplication().getAssetManifest();
+				AssetManifest.Entry manifestEntry = assetManifest == null ? null : assetManifest.find(body);
+				if (manifestEntry != null)
+					body = manifestEntry.getServedPath();
+				String file = findPrecompressedFile(fileResolver, manifestEntry, language);
+				if (file == null)
+					file = body;
 				// verify that the file we are looking for exists
-				if (httpContext.getHttpApplication().getFileResolver().exists(body, httpContext.getResponseLanguage())) {
+				if (fileResolver.exists(file, language)) {
+					if (httpStatus == HTTP_STATUS_OK && addValidators(fileResolver, fileMetadata, file, language)) {
+						sendNotModified();
+						return;
+					}
 					try {
-						fileInputStream = new BufferedInputStream(httpContext.getHttpApplication().getFileResolver().getFileStreamFor(body, httpContext.getRequest().getRequestedLanguage()));
+						fileInputStream = fileResolver.getFileStreamFor(file, language);
+						fileLength = fileMetadata == null ? -1 : fileMetadata.getFileLength(file, language);
 						// our file resolver was able to find the file all good
 					} catch (IOException e) {
 						// had getting the file stream
@@ -195,57 +213,69 @@ public class HttpResponse {
 					send404();
 					return;
 				}
-
-				//contentLength = fileInputStream.available()
-				ByteArrayOutputStream tempOut = new ByteArrayOutputStream();
-				byte[] buf = new byte[2048];
-				int count;
-				try {
-					while ((count = fileInputStream.read(buf)) != -1) {
-						tempOut.write(buf, 0, count);
+				if (fileInputStream instanceof ByteBufferInputStream) {
+					// already in memory, likely a slice of a mapped pack, the connection writes it as it is
+					try {
+						sendBuffer(((ByteBufferInputStream) fileInputStream).getBuffer());
+					} catch (IOException e) {
+						keepAlive = false;
+						e.printStackTrace();
+					}
+					return;
+				}
+				if (fileInputStream instanceof FileInputStream) {
+					// a real file on the device, the connection takes it over and closes it once it has been sent
+					try {
+						sendFileChannel(((FileInputStream) fileInputStream).getChannel());
+					} catch (IOException e) {
+						keepAlive = false;
+						e.printStackTrace();
 					}
-					tempOut.flush();
-					OutputStream outputStream = httpContext.getClientSocket().getOutputStream();
-					contentLength = tempOut.size() + (extraDataForReply != null ? extraDataForReply.length : 0);
-					outputStream.write(getHeaders().getBytes());
-					outputStream.write(tempOut.toByteArray());
-					if (extraDataForReply != null)
-						outputStream.write(extraDataForReply);
-					outputStream.flush();
 					return;
+				}
+				try {
+					sendFileStream(fileInputStream, fileLength);
 				} catch (IOException e) {
+					keepAlive = false;
 					e.printStackTrace();
+				} finally {
+					try {
+						fileInputStream.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
 				}
+				return;
 			} else if (body != null) { // body is not a file path
 				// we will send the string as the reply body
 				try {
-					OutputStream outputStream = httpContext.getClientSocket().getOutputStream();
-					contentLength = body.length();
-					outputStream.write(getHeaders().getBytes());
-					outputStream.write(body.getBytes());
-					outputStream.flush();
+					sendDynamicBody(body.getBytes());
 					return;
 				} catch (IOException e) {
+					keepAlive = false;
 					e.printStackTrace();
 				}
 			}
 			try {
-				OutputStream outputStream = httpContext.getClientSocket().getOutputStream();
+				OutputStream outputStream = httpContext.getConnection().getOutputStream();
 				contentLength = 0;
-				outputStream.write(getHeaders().getBytes());
+				writeHeaders(outputStream);
 				outputStream.flush();
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		} catch (Exception e) {
+			// we may have already written part of a reply so this connection can not be trusted for another request
+			keepAlive = false;
 			StringWriter errors = new StringWriter();
 			e.printStackTrace(new PrintWriter(errors));
 			byte[] data = errors.toString().getBytes();
 			try {
-				OutputStream outputStream = httpContext.getClientSocket().getOutputStream();
+				OutputStream outputStream = httpContext.getConnection().getOutputStream();
 				contentLength = data.length;
-				outputStream.write(getHeaders().getBytes());
-				outputStream.write(data);
+				writeHeaders(outputStream);
+				if (!isHeadersOnly())
+					outputStream.write(data);
 				outputStream.flush();
 				return;
 			} catch (IOException eio) {
@@ -254,21 +284,274 @@ public class HttpResponse {
 		}
 	}
 
+	/**
+	 * Sends a reply built by a handler. If dynamic compression is turned on and the reply is big enough, of a type
+	 * worth compressing and the client takes gzip it is deflated straight into a chunked stream so no second full copy
+	 * of the reply is made
+	 *
+	 * @param data the reply body
+	 * @throws IOException
+	 */
+	private void sendDynamicBody(byte[] data) throws IOException {
+		OutputStream outputStream = httpContext.getConnection().getOutputStream();
+		FoxyServerSettings settings = FoxyServerSettings.getInstance();
+		MimeType replyMimeType = mimeType;
+		if (replyMimeType == null && contentType != null)
+			replyMimeType = MimeTypeRegistry.getInstance().forContentType(contentType);
+		boolean compressible = settings.isCompressingDynamicResponses() && !headers.containsKey(HEADER_CONTENT_ENCODING)
+				&& replyMimeType != null && replyMimeType.isCompressible();
+		if (compressible)
+			headers.put(HEADER_VARY, "Accept-Encoding");
+		if (compressible && data.length >= settings.getCompressionMinBytes() && httpContext.getRequest().isHttp11()
+				&& httpContext.getRequest().acceptsEncoding(GZIP_ENCODING)) {
+			chunked = true;
+			headers.put(HEADER_CONTENT_ENCODING, GZIP_ENCODING);
+			writeHeaders(outputStream);
+			if (isHeadersOnly()) {
+				outputStream.flush();
+				return;
+			}
+			// closing the gzip stream frees its deflater and finishes the chunks, the connection stays open
+			GZIPOutputStream gzipOutputStream = new LevelGzipOutputStream(new ChunkedOutputStream(outputStream), settings.getCompressionLevel());
+			try {
+				gzipOutputStream.write(data);
+			} finally {
+				gzipOutputStream.close();
+			}
+		} else {
+			contentLength = data.length;
+			writeHeaders(outputStream);
+			if (!isHeadersOnly())
+				outputStream.write(data);
+		}
+		outputStream.flush();
+	}
+
+	/**
+	 * Adds Cache-Control and Expires from the first rule in the policy table that matches the requested path, unless
+	 * the handler already set its own Cache-Control. Fingerprinted files from the asset manifest are cached for good
+	 */
+	private void applyCacheControlPolicy() {
+		if (headers.containsKey(HEADER_CACHE_CONTROL))
+			return;
+		String path = httpContext.getRequest().getRequestedDocument();
+		AssetManifest assetManifest = httpContext.getHttpApplication().getAssetManifest();
+		AssetManifest.Entry manifestEntry = assetManifest == null ? null : assetManifest.find(path);
+		if (manifestEntry != null && manifestEntry.isFingerprinted() && path.equals(manifestEntry.getServedPath())) {
+			headers.put(HEADER_CACHE_CONTROL, IMMUTABLE_CACHE_CONTROL);
+			headers.put(HEADER_EXPIRES, HttpDateUtils.format(System.currentTimeMillis() + IMMUTABLE_MAX_AGE_MILLIS));
+			return;
+		}
+		CacheControlPolicy.Rule rule = httpContext.getHttpApplication().getCacheControlPolicy().findRule(path);
+		if (rule == null)
+			return;
+		headers.put(HEADER_CACHE_CONTROL, rule.getCacheControl());
+		if (rule.getMaxAgeMillis() >= 0)
+			headers.put(HEADER_EXPIRES, HttpDateUtils.format(System.currentTimeMillis() + rule.getMaxAgeMillis()));
+	}
+
+	/**
+	 * Adds the ETag and Last-Modified headers for the file we are about to send
+	 *
+	 * @param fileResolver the resolver the file comes from
+	 * @param fileMetadata what the resolver knows about its files or null if it can not say
+	 * @param file         the file we are about to send
+	 * @param language     the language the file is looked up in
+	 * @return true if the client already has this version of the file
+	 */
+	private boolean addValidators(IFileResolver fileResolver, IFileMetadata fileMetadata, String file, String language) {
+		String entityTag = httpContext.getHttpApplication().getEntityTagCache().getEntityTag(fileResolver, file, language);
+		long lastModified = fileMetadata == null ? -1 : fileMetadata.getLastModified(file, language);
+		if (entityTag != null)
+			headers.put(HEADER_ETAG, entityTag);
+		if (lastModified >= 0)
+			headers.put(HEADER_LAST_MODIFIED, HttpDateUtils.format(lastModified));
+		return httpContext.getRequest().isNotModified(entityTag, lastModified);
+	}
+
+	/**
+	 * Tells the client the copy it has is still good, a 304 never has a body
+	 */
+	private void sendNotModified() {
+		httpStatus = HTTP_STATUS_NOT_MODIFIED;
+		contentLength = -1;
+		chunked = false;
+		try {
+			OutputStream outputStream = httpContext.getConnection().getOutputStream();
+			writeHeaders(outputStream);
+			outputStream.flush();
+		} catch (IOException e) {
+			keepAlive = false;
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Looks for precompressed siblings of the requested file (file.br and file.gz). If any exist the reply varies on
+	 * Accept-Encoding, and the best one the client accepts is picked and its Content-Encoding set
+	 *
+	 * @param fileResolver  the resolver to look for the siblings with
+	 * @param manifestEntry what the asset manifest says about the file, if it has it we do not have to look
+	 * @param language      the language the file is looked up in
+	 * @return the sibling to send or null to send the file as is
+	 */
+	private String findPrecompressedFile(IFileResolver fileResolver, AssetManifest.Entry manifestEntry, String language) {
+		for (String extension : PRECOMPRESSED_EXTENSIONS) {
+			if (body.endsWith(extension))
+				return null;
+		}
+		String chosenFile = null;
+		for (int i = 0; i < PRECOMPRESSED_ENCODINGS.length; i++) {
+			String variant = body + PRECOMPRESSED_EXTENSIONS[i];
+			boolean variantExists = manifestEntry != null ? manifestEntry.hasVariant(PRECOMPRESSED_EXTENSIONS[i]) : fileResolver.exists(variant, language);
+			if (!variantExists)
+				continue;
+			headers.put(HEADER_VARY, "Accept-Encoding");
+			if (chosenFile == null && httpContext.getRequest().acceptsEncoding(PRECOMPRESSED_ENCODINGS[i])) {
+				chosenFile = variant;
+				headers.put(HEADER_CONTENT_ENCODING, PRECOMPRESSED_ENCODINGS[i]);
+			}
+		}
+		return chosenFile;
+	}
+
+	/**
+	 * Hands a file on the device to the connection so it can be sent without copying it through the heap. The length
+	 * comes from the open file so it always matches what is sent
+	 *
+	 * @param fileChannel the file to send, the connection closes it once it has been sent
+	 * @throws IOException
+	 */
+	private void sendFileChannel(FileChannel fileChannel) throws IOException {
+		OutputStream outputStream = httpContext.getConnection().getOutputStream();
+		long position;
+		long count;
+		try {
+			position = fileChannel.position();
+			count = fileChannel.size() - position;
+			contentLength = count + (extraDataForReply != null ? extraDataForReply.length : 0);
+			writeHeaders(outputStream);
+		} catch (IOException e) {
+			fileChannel.close();
+			throw e;
+		}
+		if (isHeadersOnly()) {
+			fileChannel.close();
+			outputStream.flush();
+			return;
+		}
+		httpContext.getConnection().transferFrom(fileChannel, position, count);
+		if (extraDataForReply != null)
+			outputStream.write(extraDataForReply);
+		outputStream.flush();
+	}
+
+	/**
+	 * Hands a file that is already in a buffer to the connection so it is written without being copied to a byte[]
+	 *
+	 * @param buffer the file from its position to its limit
+	 * @throws IOException
+	 */
+	private void sendBuffer(ByteBuffer buffer) throws IOException {
+		OutputStream outputStream = httpContext.getConnection().getOutputStream();
+		contentLength = buffer.remaining() + (extraDataForReply != null ? extraDataForReply.length : 0);
+		writeHeaders(outputStream);
+		if (!isHeadersOnly()) {
+			httpContext.getConnection().write(buffer);
+			if (extraDataForReply != null)
+				outputStream.write(extraDataForReply);
+		}
+		outputStream.flush();
+	}
+
+	/**
+	 * Streams a file straight from the resolver to the client through a small per thread buffer. If we know how big the
+	 * file is we send a Content-Length otherwise we fall back to chunked encoding (or closing the connection for
+	 * HTTP/1.0 clients)
+	 *
+	 * @param fileInputStream the file to send
+	 * @param fileLength      the length of the file or -1 if it is not known
+	 * @throws IOException
+	 */
+	private void sendFileStream(InputStream fileInputStream, long fileLength) throws IOException {
+		OutputStream outputStream = httpContext.getConnection().getOutputStream();
+		int extraLength = extraDataForReply != null ? extraDataForReply.length : 0;
+		byte[] buffer = TRANSFER_BUFFER.get();
+		if (isHeadersOnly()) {
+			// the same framing headers a GET would get
+			if (fileLength >= 0) {
+				contentLength = fileLength + extraLength;
+			} else if (httpContext.getRequest().isHttp11()) {
+				chunked = true;
+			} else {
+				contentLength = -1;
+				keepAlive = false;
+			}
+			writeHeaders(outputStream);
+		} else if (fileLength >= 0) {
+			contentLength = fileLength + extraLength;
+			writeHeaders(outputStream);
+			long sent = copy(fileInputStream, outputStream, buffer);
+			if (sent != fileLength) {
+				// the file changed under us and the length we promised is wrong
+				Log.w(Constants.Tag, String.format("file %s was %s bytes but %s were expected", body, sent, fileLength));
+				keepAlive = false;
+			}
+			if (extraDataForReply != null)
+				outputStream.write(extraDataForReply);
+		} else if (httpContext.getRequest().isHttp11()) {
+			chunked = true;
+			writeHeaders(outputStream);
+			ChunkedOutputStream chunkedOutputStream = new ChunkedOutputStream(outputStream);
+			copy(fileInputStream, chunkedOutputStream, buffer);
+			if (extraDataForReply != null)
+				chunkedOutputStream.write(extraDataForReply);
+			chunkedOutputStream.finish();
+		} else {
+			// no length and the client can not do chunked so the end of the body is the end of the connection
+			contentLength = -1;
+			keepAlive = false;
+			writeHeaders(outputStream);
+			copy(fileInputStream, outputStream, buffer);
+			if (extraDataForReply != null)
+				outputStream.write(extraDataForReply);
+		}
+		outputStream.flush();
+	}
+
+	private static long copy(InputStream in, OutputStream out, byte[] buffer) throws IOException {
+		long total = 0;
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+			total += count;
+		}
+		return total;
+	}
+
 	/**
 	 * This reconfigures the response to send the 404 data
 	 */
 	public void send404() {
 		Log.d(Constants.Tag, String.format("going to 404 for body: %s", body));
 		body = "not found";
-		contentType = "text/plain";
+		setMimeType(MimeTypeRegistry.PLAIN_TEXT);
 		httpStatus = HTTP_STATUS_NOT_FOUND;
 		bodyIsFilePath = false;
 		rawReply = null;
+		chunked = false;
+		headers.remove(HEADER_CONTENT_ENCODING);
+		headers.remove(HEADER_CACHE_CONTROL);
+		headers.remove(HEADER_EXPIRES);
+		headers.remove(HEADER_ETAG);
+		headers.remove(HEADER_LAST_MODIFIED);
 		try {
-			OutputStream outputStream = httpContext.getClientSocket().getOutputStream();
-			contentLength = body.length();
-			outputStream.write(getHeaders().getBytes());
-			outputStream.write(body.getBytes());
+			OutputStream outputStream = httpContext.getConnection().getOutputStream();
+			byte[] data = body.getBytes();
+			contentLength = data.length;
+			writeHeaders(outputStream);
+			if (!isHeadersOnly())
+				outputStream.write(data);
 			outputStream.flush();
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -283,6 +566,113 @@ public class HttpResponse {
 		bodyIsFilePath = true;
 	}
 
+	/**
+	 * Sends the headers now and hands back a stream to write the body to as it is made, so the client starts getting
+	 * it straight away and a big reply never has to be held in memory. Set the status, type and headers before calling
+	 * this as they can not change after, anything set with setReplyString or the like is ignored. HTTP/1.1 clients
+	 * get the body in chunks of up to 8k, flush sends what has been written so far. HTTP/1.0 clients have no chunks so
+	 * the body ends when the connection is closed. Closing the stream ends the body and leaves the connection open,
+	 * if the handler does not it is done when the response is processed
+	 *
+	 * @return the stream for the body, the same one every call
+	 * @throws IOException if the headers could not be sent
+	 */
+	public OutputStream getOutputStream() throws IOException {
+		if (streamOutputStream != null)
+			return streamOutputStream;
+		if (wasProcessed)
+			throw new IllegalStateException("the response was already sent");
+		if (httpStatus == 0)
+			httpStatus = HTTP_STATUS_OK;
+		if (httpStatus == HTTP_STATUS_OK)
+			applyCacheControlPolicy();
+		if (StringUtils.isNullEmptyOrWhiteSpace(contentType))
+			setContentType("raw");
+		body = null;
+		bodyIsFilePath = false;
+		rawReply = null;
+		headers.remove(HEADER_CONTENT_ENCODING);
+		if (httpContext.getRequest().hasUnreadBody())
+			keepAlive = false;
+		OutputStream outputStream = httpContext.getConnection().getOutputStream();
+		if (httpContext.getRequest().isHttp11()) {
+			chunked = true;
+		} else {
+			chunked = false;
+			contentLength = -1;
+			keepAlive = false;
+		}
+		writeHeaders(outputStream);
+		// the client hears back before the first chunk is ready
+		outputStream.flush();
+		if (isHeadersOnly())
+			streamOutputStream = new StreamingOutputStream(new DiscardingOutputStream());
+		else
+			streamOutputStream = new StreamingOutputStream(chunked ? new ChunkedOutputStream(outputStream) : outputStream);
+		return streamOutputStream;
+	}
+
+	/**
+	 * Same as getOutputStream but for text, the type defaults to plain text and the text is sent in the charset of
+	 * the type or utf-8. The writer buffers a little on its own so call flush when the client should see what was
+	 * written so far
+	 *
+	 * @return the writer for the body, the same one every call
+	 * @throws IOException if the headers could not be sent
+	 */
+	@SuppressWarnings("unused")
+	public Writer getWriter() throws IOException {
+		if (streamWriter == null) {
+			if (StringUtils.isNullEmptyOrWhiteSpace(contentType))
+				setMimeType(MimeTypeRegistry.PLAIN_TEXT);
+			String charset = mimeType != null ? mimeType.getCharset() : null;
+			streamWriter = new OutputStreamWriter(getOutputStream(), Charset.forName(charset != null ? charset : STREAM_CHARSET));
+		}
+		return streamWriter;
+	}
+
+	/**
+	 * @return true once the headers have been sent for a streamed body
+	 */
+	public boolean isCommitted() {
+		return streamOutputStream != null;
+	}
+
+	/**
+	 * Gives up on a streamed body part way through. The body is not ended properly and the connection is closed so the
+	 * client can tell it did not get all of it
+	 */
+	void abortStream() {
+		streamAborted = true;
+		keepAlive = false;
+	}
+
+	/**
+	 * Ends a streamed body the handler did not end itself
+	 */
+	private void finishStream() {
+		if (streamAborted || streamOutputStream.isClosed())
+			return;
+		try {
+			if (streamWriter != null)
+				streamWriter.flush();
+			streamOutputStream.close();
+		} catch (IOException e) {
+			keepAlive = false;
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * A reply to a HEAD gets the headers a GET would have got, Content-Length included, but never the body so the
+	 * connection can be kept for the next request
+	 *
+	 * @return true if only the headers are to be sent
+	 */
+	private boolean isHeadersOnly() {
+		return httpContext.getRequest().getRequestVerb() == HttpRequest.REQUEST_VERB_HEAD;
+	}
+
 	/**
 	 * @param data a string that will be returned as the reply
 	 */
@@ -304,7 +694,7 @@ public class HttpResponse {
 	 */
 	@SuppressWarnings("unused")
 	public void setMimeTypeJson() {
-		contentType = MIME_JSON;
+		setMimeType(MimeTypeRegistry.JSON);
 	}
 
 	/**
@@ -320,10 +710,31 @@ public class HttpResponse {
 		headers.put(key, value);
 	}
 
-	private String getHeaders() {
+	private void writeHeaders(OutputStream outputStream) throws IOException {
 		authToken = httpContext.getHttpSession().getAuthToken();
-		headers.put("Content-Length", String.valueOf(contentLength));
-		headers.put("Content-Type", contentType);
+		if (chunked) {
+			headers.remove(HEADER_CONTENT_LENGTH);
+			headers.put(HEADER_TRANSFER_ENCODING, "chunked");
+		} else {
+			headers.remove(HEADER_TRANSFER_ENCODING);
+			if (contentLength >= 0)
+				headers.put(HEADER_CONTENT_LENGTH, String.valueOf(contentLength));
+			else
+				headers.remove(HEADER_CONTENT_LENGTH);
+		}
+		// a known type brings its header line ready to send
+		byte[] contentTypeLine = mimeType != null ? mimeType.getHeaderBytes() : null;
+		if (contentTypeLine == null)
+			headers.put(HEADER_CONTENT_TYPE, contentType);
+		else
+			headers.remove(HEADER_CONTENT_TYPE);
+		if (keepAlive) {
+			headers.put(HEADER_CONNECTION, "keep-alive");
+			headers.put(HEADER_KEEP_ALIVE, String.format("timeout=%s", FoxyServerSettings.getInstance().getKeepAliveTimeoutSeconds()));
+		} else {
+			headers.put(HEADER_CONNECTION, "close");
+			headers.remove(HEADER_KEEP_ALIVE);
+		}
 		if (httpContext.getHttpAuthHandler().enableAuthCookie()) {
 			headers.put("Set-Cookie", String.format("%s=%s; path=/; HttpOnly", httpContext.getHttpAuthHandler().getAuthTokenName(), authToken));
 		}
@@ -342,6 +753,12 @@ public class HttpResponse {
 			case HTTP_STATUS_SEE_OTHER:
 				sb.append(String.format("HTTP/1.1 %s See Other\n", httpStatus));
 				break;
+			case HTTP_STATUS_NOT_MODIFIED:
+				sb.append(String.format("HTTP/1.1 %s Not Modified\n", httpStatus));
+				break;
+			case HTTP_STATUS_METHOD_NOT_ALLOWED:
+				sb.append(String.format("HTTP/1.1 %s Method Not Allowed\n", httpStatus));
+				break;
 			case HTTP_STATUS_TEMPORY_REDIREC:
 				sb.append(String.format("HTTP/1.1 %s Temporary Redirect\n", httpStatus));
 				break;
@@ -351,6 +768,15 @@ public class HttpResponse {
 			case HTTP_STATUS_NOT_IMPLEMENTED:
 				sb.append(String.format("HTTP/1.1 %s Not Implemented\n", httpStatus));
 				break;
+			case HTTP_STATUS_PAYLOAD_TOO_LARGE:
+				sb.append(String.format("HTTP/1.1 %s Payload Too Large\n", httpStatus));
+				break;
+			case HTTP_STATUS_SERVICE_UNAVAILABLE:
+				sb.append(String.format("HTTP/1.1 %s Service Unavailable\n", httpStatus));
+				break;
+			case HTTP_STATUS_GATEWAY_TIMEOUT:
+				sb.append(String.format("HTTP/1.1 %s Gateway Timeout\n", httpStatus));
+				break;
 			default:
 				sb.append(String.format("HTTP/1.1 %s\n", httpStatus));
 				break;
@@ -362,8 +788,19 @@ public class HttpResponse {
 			}
 			sb.append(String.format("%s: %s\n", pair.getKey(), pair.getValue()));
 		}
-		sb.append("\n");
-		return sb.toString();
+		if (contentTypeLine == null) {
+			sb.append("\n");
+			outputStream.write(sb.toString().getBytes());
+			return;
+		}
+		// the connection streams are not buffered so the head and the ready made type line are copied together into
+		// one buffer of the exact size, that goes out in a single write rather than one per piece
+		byte[] head = sb.toString().getBytes();
+		ByteArrayOutputStream all = new ByteArrayOutputStream(head.length + contentTypeLine.length + 1);
+		all.write(head);
+		all.write(contentTypeLine);
+		all.write('\n');
+		all.writeTo(outputStream);
 	}
 
 	/**
@@ -382,6 +819,17 @@ public class HttpResponse {
 	@SuppressWarnings("unused")
 	public void setContentType(String contentType) {
 		this.contentType = contentType;
+		mimeType = null;
+	}
+
+	/**
+	 * Sets the reply content type to one of the types from the MimeTypeRegistry
+	 *
+	 * @param mimeType the type to return
+	 */
+	public void setMimeType(MimeType mimeType) {
+		this.mimeType = mimeType;
+		contentType = mimeType.getContentType();
 	}
 
 	/**
@@ -411,6 +859,20 @@ public class HttpResponse {
 		httpStatus = httpStatusCode;
 	}
 
+	/**
+	 * @return true if the connection will be kept open for another request once this response is sent
+	 */
+	public boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * @param keepAlive true will keep the connection open for another request once this response is sent
+	 */
+	public void setKeepAlive(boolean keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+
 	/**
 	 * @return the auth token for this response
 	 */
@@ -429,4 +891,76 @@ public class HttpResponse {
 		httpStatus = HTTP_STATUS_FOUND;
 		setHeader(HEADER_Location, location);
 	}
+
+	/**
+	 * A gzip stream that lets us pick the deflate level
+	 */
+	private static class LevelGzipOutputStream extends GZIPOutputStream {
+
+		LevelGzipOutputStream(OutputStream out, int level) throws IOException {
+			super(out, TRANSFER_BUFFER_SIZE);
+			def.setLevel(level);
+		}
+	}
+
+	/**
+	 * The stream a handler writes a streamed body to, closing it ends the body without closing the connection
+	 */
+	private static class StreamingOutputStream extends OutputStream {
+		private final OutputStream out;
+		private boolean closed;
+
+		StreamingOutputStream(OutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(int oneByte) throws IOException {
+			if (closed)
+				throw new IOException("the response body was already ended");
+			out.write(oneByte);
+		}
+
+		@Override
+		public void write(byte[] data, int offset, int length) throws IOException {
+			if (closed)
+				throw new IOException("the response body was already ended");
+			out.write(data, offset, length);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (!closed)
+				out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed)
+				return;
+			closed = true;
+			if (out instanceof ChunkedOutputStream)
+				((ChunkedOutputStream) out).finish();
+			else
+				out.flush();
+		}
+
+		boolean isClosed() {
+			return closed;
+		}
+	}
+
+	/**
+	 * Where a streamed body for a HEAD goes, the handler writes it as it would for a GET and none of it is sent
+	 */
+	private static class DiscardingOutputStream extends OutputStream {
+
+		@Override
+		public void write(int oneByte) {
+		}
+
+		@Override
+		public void write(byte[] data, int offset, int length) {
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web;
+
+import java.nio.charset.Charset;
+
+/**
+ * This describes a type of content we send. Besides the type it knows the charset text is sent in and if replies of
+ * the type get smaller when compressed. The Content-Type header line is built once when the type is created so
+ * sending a reply only has to copy its bytes
+ */
+public class MimeType {
+
+	private static final Charset HEADER_CHARSET = Charset.forName("ISO-8859-1");
+
+	private final String type;
+	private final String charset;
+	private final boolean compressible;
+	private final String contentType;
+	private final byte[] headerBytes;
+
+	/**
+	 * Creates our type
+	 *
+	 * @param type         the type ie text/css
+	 * @param charset      the charset text of this type is sent in or null if it is not text
+	 * @param compressible true if replies of this type are worth compressing
+	 */
+	public MimeType(String type, String charset, boolean compressible) {
+		this.type = type;
+		this.charset = charset;
+		this.compressible = compressible;
+		contentType = charset == null ? type : String.format("%s; charset=%s", type, charset);
+		headerBytes = String.format("Content-Type: %s\n", contentType).getBytes(HEADER_CHARSET);
+	}
+
+	/**
+	 * @return the type without any parameters ie text/css
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * @return the charset text of this type is sent in or null if it is not text
+	 */
+	@SuppressWarnings("unused")
+	public String getCharset() {
+		return charset;
+	}
+
+	/**
+	 * @return true if replies of this type are worth compressing, images and fonts that are already compressed are not
+	 */
+	public boolean isCompressible() {
+		return compressible;
+	}
+
+	/**
+	 * @return the value sent in the Content-Type header ie text/css; charset=utf-8
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * @return the whole Content-Type header line, this is shared so do not change it
+	 */
+	byte[] getHeaderBytes() {
+		return headerBytes;
+	}
+
+	@Override
+	public String toString() {
+		return contentType;
+	}
+}
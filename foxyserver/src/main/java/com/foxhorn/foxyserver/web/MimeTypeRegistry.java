@@ -0,0 +1,180 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This is where the server looks up the type of a file from its extension. It comes with the types a web app usually
+ * needs and more can be registered or the built in ones replaced before the server starts
+ */
+public class MimeTypeRegistry {
+
+	private static final String UTF_8 = "utf-8";
+
+	public static final MimeType HTML = new MimeType("text/html", UTF_8, true);
+	public static final MimeType PLAIN_TEXT = new MimeType("text/plain", UTF_8, true);
+	public static final MimeType JSON = new MimeType("application/json", UTF_8, true);
+
+	private static final MimeTypeRegistry instance = new MimeTypeRegistry();
+
+	private final ConcurrentHashMap<String, MimeType> typesByExtension = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, MimeType> typesByName = new ConcurrentHashMap<>();
+	private volatile MimeType noExtensionType = HTML;
+	private volatile MimeType unknownType = PLAIN_TEXT;
+
+	private MimeTypeRegistry() {
+		register(HTML, "html", "htm");
+		register(PLAIN_TEXT, "txt", "text", "log");
+		register(JSON, "json", "map");
+		register(new MimeType("text/css", UTF_8, true), "css");
+		register(new MimeType("text/javascript", UTF_8, true), "js", "mjs");
+		register(new MimeType("application/javascript", UTF_8, true));
+		register(new MimeType("text/xml", UTF_8, true), "xml");
+		register(new MimeType("text/csv", UTF_8, true), "csv");
+		register(new MimeType("text/cache-manifest", UTF_8, true), "appcache");
+		register(new MimeType("application/manifest+json", UTF_8, true), "webmanifest");
+		register(new MimeType("image/svg+xml", UTF_8, true), "svg");
+		register(new MimeType("image/x-icon", null, true), "ico");
+		register(new MimeType("image/bmp", null, true), "bmp");
+		register(new MimeType("image/png", null, false), "png");
+		register(new MimeType("image/gif", null, false), "gif");
+		register(new MimeType("image/jpeg", null, false), "jpg", "jpeg");
+		register(new MimeType("image/webp", null, false), "webp");
+		register(new MimeType("application/font-woff", null, false), "woff");
+		register(new MimeType("font/woff2", null, false), "woff2");
+		register(new MimeType("application/x-font-ttf", null, true), "ttf");
+		register(new MimeType("application/x-font-opentype", null, true), "otf");
+		register(new MimeType("application/vnd.ms-fontobject", null, true), "eot");
+		register(new MimeType("application/wasm", null, true), "wasm");
+		register(new MimeType("application/pdf", null, false), "pdf");
+		register(new MimeType("application/zip", null, false), "zip");
+		register(new MimeType("audio/mpeg", null, false), "mp3");
+		register(new MimeType("audio/ogg", null, false), "ogg");
+		register(new MimeType("audio/wav", null, false), "wav");
+		register(new MimeType("video/mp4", null, false), "mp4");
+		register(new MimeType("video/webm", null, false), "webm");
+	}
+
+	public static MimeTypeRegistry getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Adds a type, or replaces the one already there for any of the extensions
+	 *
+	 * @param mimeType   the type
+	 * @param extensions the file extensions without the dot that have this type
+	 */
+	public void register(MimeType mimeType, String... extensions) {
+		typesByName.put(mimeType.getType(), mimeType);
+		for (String extension : extensions)
+			typesByExtension.put(extension.toLowerCase(Locale.US), mimeType);
+	}
+
+	/**
+	 * Changes if replies of a type are compressed, the type keeps its extensions. A type that is not registered yet is
+	 * added with no extensions
+	 *
+	 * @param type         the type without any parameters ie text/css
+	 * @param compressible true if replies of this type are worth compressing
+	 */
+	public void setCompressible(String type, boolean compressible) {
+		MimeType current = typesByName.get(type);
+		if (current == null) {
+			register(new MimeType(type, null, compressible));
+			return;
+		}
+		if (current.isCompressible() == compressible)
+			return;
+		MimeType replacement = new MimeType(current.getType(), current.getCharset(), compressible);
+		typesByName.put(type, replacement);
+		for (Map.Entry<String, MimeType> entry : typesByExtension.entrySet()) {
+			if (entry.getValue() == current)
+				entry.setValue(replacement);
+		}
+		if (noExtensionType == current)
+			noExtensionType = replacement;
+		if (unknownType == current)
+			unknownType = replacement;
+	}
+
+	/**
+	 * @return the registered types without any parameters ie text/css
+	 */
+	public Set<String> getTypes() {
+		return Collections.unmodifiableSet(typesByName.keySet());
+	}
+
+	/**
+	 * @param extension the file extension without the dot
+	 * @return the type or null if none is registered for it
+	 */
+	public MimeType forExtension(String extension) {
+		MimeType mimeType = typesByExtension.get(extension);
+		if (mimeType == null)
+			mimeType = typesByExtension.get(extension.toLowerCase(Locale.US));
+		return mimeType;
+	}
+
+	/**
+	 * @param file the file with path info
+	 * @return the type of the file, files with no extension are html and ones we do not know are plain text
+	 */
+	public MimeType forFile(String file) {
+		int dot = file.lastIndexOf('.');
+		if (dot == -1 || dot < file.lastIndexOf('/'))
+			return noExtensionType;
+		MimeType mimeType = forExtension(file.substring(dot + 1));
+		return mimeType == null ? unknownType : mimeType;
+	}
+
+	/**
+	 * @param contentType a Content-Type value, any parameters are ignored
+	 * @return the registered type or null if it is not one we know
+	 */
+	public MimeType forContentType(String contentType) {
+		int split = contentType.indexOf(';');
+		String type = split < 0 ? contentType.trim() : contentType.substring(0, split).trim();
+		MimeType mimeType = typesByName.get(type);
+		if (mimeType == null)
+			mimeType = typesByName.get(type.toLowerCase(Locale.US));
+		return mimeType;
+	}
+
+	/**
+	 * @param noExtensionType the type of files with no extension. default is text/html
+	 */
+	@SuppressWarnings("unused")
+	public void setNoExtensionType(MimeType noExtensionType) {
+		this.noExtensionType = noExtensionType;
+	}
+
+	/**
+	 * @param unknownType the type of files with an extension that is not registered. default is text/plain
+	 */
+	@SuppressWarnings("unused")
+	public void setUnknownType(MimeType unknownType) {
+		this.unknownType = unknownType;
+	}
+}
@@ -0,0 +1,271 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.foxhorn.foxyserver.web;
+
+import com.foxhorn.foxyserver.web.api.IMultipartPartHandler;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodes a multipart/form-data body as it is read. Each part is handed to the handler as a stream that ends at the
+ * next boundary, only a fixed size window of the body is ever held in memory no matter how big the parts are
+ */
+public class MultipartParser {
+
+	private static final int BUFFER_SIZE = 16384;
+	private static final int MAX_PART_HEAD_BYTES = 8192;
+	private static final int MAX_BOUNDARY_LENGTH = 70;
+	private static final String MULTIPART_FORM_DATA = "multipart/form-data";
+	private static final String DEFAULT_PART_CONTENT_TYPE = "text/plain";
+	// browsers send file names and header values as utf-8
+	private static final Charset HEAD_CHARSET = Charset.forName("UTF-8");
+	private static final byte[] HEAD_END = {'\r', '\n', '\r', '\n'};
+
+	private final InputStream in;
+	private final byte[] delimiter;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position;
+	private int limit;
+	private boolean endOfInput;
+
+	/**
+	 * Creates our parser
+	 *
+	 * @param in       the body to decode
+	 * @param boundary the boundary from the Content-Type of the request
+	 */
+	public MultipartParser(InputStream in, String boundary) {
+		this.in = in;
+		delimiter = ("\r\n--" + boundary).getBytes(HEAD_CHARSET);
+		// the first boundary has no line break in front of it so pretend there was one
+		buffer[0] = '\r';
+		buffer[1] = '\n';
+		limit = 2;
+	}
+
+	/**
+	 * Pulls the boundary out of a Content-Type header
+	 *
+	 * @param contentType the Content-Type of the request
+	 * @return the boundary or null if this is not a multipart/form-data body
+	 */
+	public static String getBoundary(String contentType) {
+		if (contentType == null || !contentType.toLowerCase().startsWith(MULTIPART_FORM_DATA))
+			return null;
+		String boundary = getParameter(contentType, "boundary");
+		if (boundary == null || boundary.isEmpty() || boundary.length() > MAX_BOUNDARY_LENGTH)
+			return null;
+		return boundary;
+	}
+
+	/**
+	 * Reads the whole body handing each part to the handler as it goes
+	 *
+	 * @param handler what takes the parts
+	 * @throws IOException if reading fails or the body is not well formed
+	 */
+	public void parse(IMultipartPartHandler handler) throws IOException {
+		// anything in front of the first boundary is preamble
+		drain(new PartInputStream());
+		while (true) {
+			ensureAvailable(2);
+			if (buffer[position] == '-' && buffer[position + 1] == '-')
+				return;
+			skipLineEnd();
+			MultipartPart part = readPartHead();
+			PartInputStream content = new PartInputStream();
+			handler.onPart(part, content);
+			drain(content);
+		}
+	}
+
+	private void skipLineEnd() throws IOException {
+		// senders may pad the boundary line with white space
+		while (true) {
+			ensureAvailable(1);
+			byte current = buffer[position++];
+			if (current == '\n')
+				return;
+			if (current != ' ' && current != '\t' && current != '\r')
+				throw new IOException("multipart boundary was not followed by a line break");
+		}
+	}
+
+	private MultipartPart readPartHead() throws IOException {
+		ensureAvailable(2);
+		if (buffer[position] == '\r' && buffer[position + 1] == '\n') {
+			// a part with no headers at all
+			position += 2;
+			return new MultipartPart(new HashMap<String, String>(), null, null, DEFAULT_PART_CONTENT_TYPE);
+		}
+		int headEnd;
+		while ((headEnd = indexOf(HEAD_END, position, limit)) < 0) {
+			if (limit - position >= MAX_PART_HEAD_BYTES)
+				throw new IOException(String.format("multipart part headers are bigger than %s bytes", MAX_PART_HEAD_BYTES));
+			fill();
+			if (endOfInput && indexOf(HEAD_END, position, limit) < 0)
+				throw new EOFException("multipart body ended inside part headers");
+		}
+		String head = new String(buffer, position, headEnd - position, HEAD_CHARSET);
+		position = headEnd + HEAD_END.length;
+		Map<String, String> headers = new HashMap<>();
+		for (String line : head.split("\r\n")) {
+			int colon = line.indexOf(':');
+			if (colon > 0)
+				headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+		}
+		String disposition = headers.get("content-disposition");
+		String contentType = headers.get("content-type");
+		return new MultipartPart(
+				headers,
+				disposition == null ? null : getParameter(disposition, "name"),
+				disposition == null ? null : getParameter(disposition, "filename"),
+				contentType == null ? DEFAULT_PART_CONTENT_TYPE : contentType);
+	}
+
+	/**
+	 * Finds a parameter in a header value like form-data; name="field"; filename="a;b.txt"
+	 *
+	 * @return the unquoted value or null
+	 */
+	private static String getParameter(String headerValue, String parameterName) {
+		int index = headerValue.indexOf(';');
+		while (index >= 0 && index < headerValue.length()) {
+			int nameStart = index + 1;
+			int equals = headerValue.indexOf('=', nameStart);
+			if (equals < 0)
+				return null;
+			String name = headerValue.substring(nameStart, equals).trim();
+			int valueStart = equals + 1;
+			String value;
+			if (valueStart < headerValue.length() && headerValue.charAt(valueStart) == '"') {
+				StringBuilder quoted = new StringBuilder();
+				int i = valueStart + 1;
+				for (; i < headerValue.length() && headerValue.charAt(i) != '"'; i++) {
+					char current = headerValue.charAt(i);
+					if (current == '\\' && i + 1 < headerValue.length())
+						current = headerValue.charAt(++i);
+					quoted.append(current);
+				}
+				value = quoted.toString();
+				index = headerValue.indexOf(';', i);
+			} else {
+				index = headerValue.indexOf(';', valueStart);
+				value = headerValue.substring(valueStart, index < 0 ? headerValue.length() : index).trim();
+			}
+			if (name.equalsIgnoreCase(parameterName))
+				return value;
+		}
+		return null;
+	}
+
+	private void drain(InputStream content) throws IOException {
+		byte[] skip = new byte[1024];
+		while (content.read(skip) != -1) {
+			// just moving past it
+		}
+	}
+
+	/**
+	 * Makes sure at least count bytes are waiting in the buffer
+	 */
+	private void ensureAvailable(int count) throws IOException {
+		while (limit - position < count) {
+			if (endOfInput)
+				throw new EOFException("multipart body ended before its closing boundary");
+			fill();
+		}
+	}
+
+	private void fill() throws IOException {
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+		int count = in.read(buffer, limit, buffer.length - limit);
+		if (count == -1)
+			endOfInput = true;
+		else
+			limit += count;
+	}
+
+	private int indexOf(byte[] target, int from, int to) {
+		int last = to - target.length;
+		outer:
+		for (int i = from; i <= last; i++) {
+			for (int j = 0; j < target.length; j++) {
+				if (buffer[i + j] != target[j])
+					continue outer;
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * The content of one part, it ends at the next delimiter which it consumes
+	 */
+	private class PartInputStream extends InputStream {
+
+		private boolean finished;
+
+		@Override
+		public int read() throws IOException {
+			byte[] single = new byte[1];
+			return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] target, int offset, int length) throws IOException {
+			if (finished)
+				return -1;
+			if (length == 0)
+				return 0;
+			while (true) {
+				int found = indexOf(delimiter, position, limit);
+				int available;
+				if (found >= 0) {
+					available = found - position;
+					if (available == 0) {
+						position += delimiter.length;
+						finished = true;
+						return -1;
+					}
+				} else {
+					// the end of the buffer could be the start of a delimiter so hold it back
+					available = limit - position - (delimiter.length - 1);
+				}
+				if (available > 0) {
+					int count = Math.min(length, available);
+					System.arraycopy(buffer, position, target, offset, count);
+					position += count;
+					return count;
+				}
+				if (endOfInput)
+					throw new EOFException("multipart body ended before its closing boundary");
+				fill();
+			}
+		}
+	}
+}
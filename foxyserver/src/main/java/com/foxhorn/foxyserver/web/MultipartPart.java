@@ -0,0 +1,76 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.foxhorn.foxyserver.web;
+
+import java.util.Map;
+
+/**
+ * This is the header side of one part of a multipart/form-data body
+ */
+public class MultipartPart {
+
+	private final Map<String, String> headers;
+	private final String name;
+	private final String fileName;
+	private final String contentType;
+
+	MultipartPart(Map<String, String> headers, String name, String fileName, String contentType) {
+		this.headers = headers;
+		this.name = name;
+		this.fileName = fileName;
+		this.contentType = contentType;
+	}
+
+	/**
+	 * @return the form field name from the Content-Disposition
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the file name the browser sent or null if this part is a plain form field
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * @return true if this part is an uploaded file
+	 */
+	public boolean isFile() {
+		return fileName != null;
+	}
+
+	/**
+	 * @return the Content-Type of the part, text/plain if none was sent
+	 */
+	@SuppressWarnings("unused")
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * @param name the header name, case does not matter
+	 * @return the header value or null
+	 */
+	@SuppressWarnings("unused")
+	public String getHeader(String name) {
+		return headers.get(name.toLowerCase());
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web;
+
+import java.util.Arrays;
+
+/**
+ * This is the local path of a request split on / without cutting anything out of it. Only where each segment starts
+ * and ends is kept so splitting allocates nothing, segments can be compared and read as numbers in place and are only
+ * turned into strings when asked. One of these is kept per connection and used again for each request, so hold on to
+ * the string of a segment, not the CharSequence, past the request. Segments come out the same as String.split would
+ * give them, empty segments at the end are dropped
+ */
+public class PathSegments {
+
+	private static final char SEPARATOR = '/';
+	private static final int INITIAL_CAPACITY = 8;
+	// the most digits a long can hold without a check for overflow
+	private static final int SAFE_LONG_DIGITS = 18;
+
+	private String path;
+	private int from;
+	private int count;
+	private int[] starts = new int[INITIAL_CAPACITY];
+	private int[] ends = new int[INITIAL_CAPACITY];
+	private Segment[] views = new Segment[INITIAL_CAPACITY];
+
+	/**
+	 * Splits the path from an offset
+	 *
+	 * @param path the requested document
+	 * @param from where the local path starts
+	 */
+	void reset(String path, int from) {
+		this.path = path;
+		this.from = from;
+		count = 0;
+		int length = path.length();
+		if (from == length) {
+			// like "".split which gives one empty string
+			add(from, from);
+			return;
+		}
+		int start = from;
+		int keep = 0;
+		for (int i = from; i <= length; i++) {
+			if (i == length || path.charAt(i) == SEPARATOR) {
+				add(start, i);
+				if (i > start)
+					keep = count;
+				start = i + 1;
+			}
+		}
+		count = keep;
+	}
+
+	/**
+	 * Forgets the last path, nothing was routed to a handler
+	 */
+	void clear() {
+		path = null;
+		count = 0;
+	}
+
+	/**
+	 * @return the local path or null if the request did not go to a handler
+	 */
+	public String getLocalPath() {
+		return path == null ? null : path.substring(from);
+	}
+
+	/**
+	 * @return how many segments there are
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @param index the index of the segment
+	 * @return the segment as a view over the path or null if there is no such segment, the view is only good till the
+	 * next request on the connection
+	 */
+	@SuppressWarnings("unused")
+	public CharSequence segment(int index) {
+		if (index < 0 || index >= count)
+			return null;
+		if (views[index] == null)
+			views[index] = new Segment(index);
+		return views[index];
+	}
+
+	/**
+	 * @param index the index of the segment
+	 * @return the segment cut out as a string or null if there is no such segment
+	 */
+	public String segmentAsString(int index) {
+		if (index < 0 || index >= count)
+			return null;
+		return path.substring(starts[index], ends[index]);
+	}
+
+	/**
+	 * Reads a segment as a number without cutting it out of the path
+	 *
+	 * @param index the index of the segment
+	 * @return the value or -1 if there is no such segment or it is not a number
+	 */
+	public long segmentAsLong(int index) {
+		return segmentAsLong(index, -1);
+	}
+
+	/**
+	 * Reads a segment as a number without cutting it out of the path
+	 *
+	 * @param index        the index of the segment
+	 * @param defaultValue what to return if there is no such segment or it is not a number
+	 * @return the value
+	 */
+	public long segmentAsLong(int index, long defaultValue) {
+		if (index < 0 || index >= count)
+			return defaultValue;
+		int position = starts[index];
+		int end = ends[index];
+		boolean negative = position < end && path.charAt(position) == '-';
+		if (negative)
+			position++;
+		if (position == end)
+			return defaultValue;
+		if (end - position > SAFE_LONG_DIGITS) {
+			// rare enough to let Long sort out what fits
+			try {
+				return Long.parseLong(path.substring(starts[index], end));
+			} catch (NumberFormatException e) {
+				return defaultValue;
+			}
+		}
+		long value = 0;
+		for (; position < end; position++) {
+			char current = path.charAt(position);
+			if (current < '0' || current > '9')
+				return defaultValue;
+			value = value * 10 + (current - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * @param index the index of the segment
+	 * @param value what to compare it to
+	 * @return true if the segment is there and is the same as the value
+	 */
+	public boolean segmentEquals(int index, String value) {
+		if (index < 0 || index >= count)
+			return false;
+		int length = ends[index] - starts[index];
+		return length == value.length() && path.regionMatches(starts[index], value, 0, length);
+	}
+
+	/**
+	 * Used to dispatch on a segment without making a string of it
+	 *
+	 * @param index  the index of the segment
+	 * @param values what it may be
+	 * @return the index into values of the one the segment is or -1 if it is none of them
+	 */
+	public int indexOf(int index, String[] values) {
+		for (int i = 0; i < values.length; i++) {
+			if (segmentEquals(index, values[i]))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param index the index of the segment
+	 * @return true if there is no such segment or it is only white space
+	 */
+	public boolean isBlank(int index) {
+		if (index < 0 || index >= count)
+			return true;
+		for (int i = starts[index]; i < ends[index]; i++) {
+			if (!Character.isWhitespace(path.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+
+	private void add(int start, int end) {
+		if (count == starts.length) {
+			int capacity = starts.length * 2;
+			starts = Arrays.copyOf(starts, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			views = Arrays.copyOf(views, capacity);
+		}
+		starts[count] = start;
+		ends[count] = end;
+		count++;
+	}
+
+	/**
+	 * A segment read straight from the path
+	 */
+	private class Segment implements CharSequence {
+		private final int index;
+
+		Segment(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public int length() {
+			return ends[index] - starts[index];
+		}
+
+		@Override
+		public char charAt(int position) {
+			return path.charAt(starts[index] + position);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return path.subSequence(starts[index] + start, starts[index] + end);
+		}
+
+		@Override
+		public String toString() {
+			return path.substring(starts[index], ends[index]);
+		}
+	}
+}
@@ -0,0 +1,32 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.api;
+
+/**
+ * This defines the structure of something that keeps what it knows about files and has to forget it when they change
+ */
+public interface IFileChangeListener {
+
+	/**
+	 * Called after a file was written, added, moved or deleted. For a directory everything under it may have changed
+	 *
+	 * @param file the file or directory with path info as it is requested ie /css/site.css
+	 */
+	void onFileChanged(String file);
+}
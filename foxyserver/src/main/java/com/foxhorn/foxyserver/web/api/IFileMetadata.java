@@ -0,0 +1,66 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.api;
+
+import com.foxhorn.foxyserver.web.MimeType;
+
+/**
+ * A file resolver can also implement this to tell the server what it already knows about its files, the length for
+ * a Content-Length, the modified time and a content hash for ETags and the type, so none of it has to be worked out
+ * by reading the file. Resolvers that do not implement it still work, the server just learns less up front
+ */
+public interface IFileMetadata {
+
+	/**
+	 * Used to find out how big a file is before it is streamed so the response can send a Content-Length
+	 *
+	 * @param file     the file to request
+	 * @param language the language of the request
+	 * @return the length in bytes or -1 if it can not be known without reading the file
+	 */
+	long getFileLength(String file, String language);
+
+	/**
+	 * Used to find out when a file last changed so clients can be told if their copy is still good
+	 *
+	 * @param file     the file to request
+	 * @param language the language of the request
+	 * @return the time in millis since the epoch or -1 if it is not known
+	 */
+	long getLastModified(String file, String language);
+
+	/**
+	 * Used to get a hash of the file content if the resolver already has one so the file does not have to be read to
+	 * work out its ETag
+	 *
+	 * @param file     the file to request
+	 * @param language the language of the request
+	 * @return the hash as hex or null if it is not known
+	 */
+	String getContentHash(String file, String language);
+
+	/**
+	 * Used to get the type of a file if the resolver already worked it out so it is not looked up on every request
+	 *
+	 * @param file     the file to request
+	 * @param language the language of the request
+	 * @return the type or null to have the server look it up from the extension
+	 */
+	MimeType getMimeType(String file, String language);
+}
@@ -0,0 +1,106 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.api;
+
+import com.foxhorn.foxyserver.web.HttpContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This defines a single client connection as seen by a HttpContext. It hides whether the bytes come from a plain
+ * blocking socket or from a connection that is driven by a selector based reactor
+ */
+public interface IHttpConnection {
+
+	/**
+	 * @return the stream the request bytes are read from
+	 * @throws IOException
+	 */
+	InputStream getInputStream() throws IOException;
+
+	/**
+	 * @return the stream the response bytes are written to
+	 * @throws IOException
+	 */
+	OutputStream getOutputStream() throws IOException;
+
+	/**
+	 * @return ip address of the client on the other end of this connection
+	 */
+	String getRemoteAddress();
+
+	/**
+	 * Used to send part of a file to the client. Anything written to the output stream before this is sent first.
+	 * Connections that sit on a socket channel do this without copying the bytes through the java heap
+	 *
+	 * @param source   the file to send from, the connection takes ownership of it and closes it once it is sent
+	 * @param position where in the file to start
+	 * @param count    how many bytes to send
+	 * @throws IOException
+	 */
+	void transferFrom(FileChannel source, long position, long count) throws IOException;
+
+	/**
+	 * Used to send bytes that are already in a buffer, such as a slice of a memory mapped file, without copying them
+	 * into a byte[] first. Anything written to the output stream before this is sent first
+	 *
+	 * @param source the bytes from its position to its limit are sent, the connection may hold on to it till then so
+	 *               it must not be changed after
+	 * @throws IOException
+	 */
+	void write(ByteBuffer source) throws IOException;
+
+	/**
+	 * Used to count the requests served on this connection
+	 *
+	 * @return the number of requests started on this connection including the one just started
+	 */
+	int incrementRequestCount();
+
+	/**
+	 * @return the context that serves requests on this connection or null before the connection is first dispatched
+	 */
+	HttpContext getHttpContext();
+
+	/**
+	 * Keeps the context with the connection so it, and its parser buffer, is used again each time the connection is
+	 * dispatched rather than made again for every request
+	 *
+	 * @param httpContext the context that serves requests on this connection
+	 */
+	void setHttpContext(HttpContext httpContext);
+
+	/**
+	 * Called once a response has been fully written on a connection that should stay open
+	 *
+	 * @param idleTimeoutMillis how long the client may take to start its next request
+	 * @return true if the next request is ready to be read by the calling thread. false means the connection is no
+	 * longer owned by the caller, it was either closed or handed back to the engine to wait for the next request
+	 */
+	boolean awaitNextRequest(int idleTimeoutMillis);
+
+	/**
+	 * Used to close the connection once anything already written has been sent
+	 */
+	void close();
+}
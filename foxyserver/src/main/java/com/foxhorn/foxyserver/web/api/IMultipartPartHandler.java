@@ -0,0 +1,38 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.foxhorn.foxyserver.web.api;
+
+import com.foxhorn.foxyserver.web.MultipartPart;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This defines the structure of something that takes the parts of a multipart/form-data body as they are decoded
+ */
+public interface IMultipartPartHandler {
+
+	/**
+	 * Called once for each part in the order they were sent
+	 *
+	 * @param part    the headers of the part
+	 * @param content the content of the part, it ends where the part ends and whatever is not read is skipped
+	 * @throws IOException
+	 */
+	void onPart(MultipartPart part, InputStream content) throws IOException;
+}
@@ -0,0 +1,35 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.api;
+
+import com.foxhorn.foxyserver.web.hosting.routing.PathRouter;
+
+/**
+ * This defines the structure of a set of routes to add to the router in one go. The route processor of
+ * foxyserver-compiler writes one of these for every class with @Route methods so nothing is looked up at runtime
+ */
+public interface IRouteTable {
+
+	/**
+	 * Called once before the server is started to add the routes
+	 *
+	 * @param router the router to add them to
+	 */
+	void register(PathRouter router);
+}
@@ -0,0 +1,43 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.api;
+
+import java.io.IOException;
+
+/**
+ * This defines the structure of a server engine which is the part of the server that owns the listening socket,
+ * accepts clients and hands each connection to the HttpApplication for processing
+ */
+public interface IServerEngine {
+
+	/**
+	 * Used to bind the port and start accepting connections
+	 *
+	 * @throws IOException if the port could not be bound
+	 */
+	void start() throws IOException;
+
+	/**
+	 * Used to stop accepting connections and release the threads the engine owns
+	 *
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	void stop() throws IOException, InterruptedException;
+}
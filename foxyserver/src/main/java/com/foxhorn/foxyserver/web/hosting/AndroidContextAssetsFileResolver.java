@@ -19,11 +19,13 @@
 package com.foxhorn.foxyserver.web.hosting;
 
 import android.content.Context;
-import android.util.Log;
 
-import com.foxhorn.foxyserver.Constants;
 import com.foxhorn.foxyserver.FoxyServerSettings;
+import com.foxhorn.foxyserver.web.MimeType;
+import com.foxhorn.foxyserver.web.api.IFileChangeListener;
+import com.foxhorn.foxyserver.web.api.IFileMetadata;
 import com.foxhorn.foxyserver.web.api.IFileResolver;
+import com.foxhorn.foxyserver.web.hosting.pack.AssetManifest;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -31,20 +33,26 @@ import java.io.IOException;
 import java.io.InputStream;
 
 /**
- * This is a file resolver that finds files on the assets off the android context
+ * This is a file resolver that finds files on the assets off the android context. The files are indexed when it is
+ * created so checking if one is there, how big it is or when it changed is a single map lookup. Device files are also
+ * checked against the index each time we are asked about them so one edited while we run is not described with its old
+ * length, time or hash. A DeviceFileSystemWatcher passing changes to onFileChanged keeps the index current without that
  * Please be aware that this does not yet support getting files based on languages
  * Created by Matt Van Horn on 9/27/14.
  */
-public class AndroidContextAssetsFileResolver implements IFileResolver {
-	private static final String ASSET_FORMAT = "Checking for asset with uri:(your application)/src/main/assets/htdocs/%s";
-	private static final String FS_FORMAT = "Checking for file with uri:%s";
+public class AndroidContextAssetsFileResolver implements IFileResolver, IFileMetadata, IFileChangeListener {
 	private static final String compiledUrl = "htdocs";
 	private final Context myContext;
 	private final boolean useExternalFiles;
 	private final String externalPathFormat;
+	// swapped whole when it is rebuilt so a request only ever sees one complete index
+	private volatile AssetIndex assetIndex;
+	private volatile AssetManifest assetManifest;
+	// device file system paths we looked for and did not find, forgotten whenever the index changes
+	private final MissingFileCache missingFiles;
 
 	/**
-	 * Creates our file resolver
+	 * Creates our file resolver and indexes the files it serves
 	 *
 	 * @param androidContext the android application context
 	 */
@@ -52,6 +60,97 @@ public class AndroidContextAssetsFileResolver implements IFileResolver {
 		myContext = androidContext;
 		useExternalFiles = FoxyServerSettings.getInstance().isUsingDeviceFileSystem();
 		externalPathFormat = useExternalFiles ? FoxyServerSettings.getInstance().getDeviceFileSystemAppPath() : null;
+		missingFiles = new MissingFileCache(FoxyServerSettings.getInstance().getMissingFileCacheSize(), FoxyServerSettings.getInstance().getMissingFileCacheMillis());
+		rebuildIndex();
+	}
+
+	/**
+	 * Indexes the files again and swaps the new index in once it is complete, call this when files on the device file
+	 * system have changed and you are not watching them. Apk assets can not change while we run so they never need it
+	 */
+	public synchronized void rebuildIndex() {
+		if (useExternalFiles)
+			assetIndex = AssetIndex.build(new File(String.format(externalPathFormat, "")));
+		else
+			assetIndex = AssetIndex.build(myContext.getAssets(), compiledUrl);
+		missingFiles.clear();
+		assetManifest = loadAssetManifest();
+	}
+
+	/**
+	 * Updates just the part of the index for a file on the device file system that changed, hook this up to a
+	 * DeviceFileSystemWatcher
+	 *
+	 * @param file the file or directory with path info as it is requested
+	 */
+	@Override
+	public synchronized void onFileChanged(String file) {
+		assetIndex = assetIndex.withChange(file);
+		missingFiles.clear();
+		if (file.equals('/' + AssetManifest.FILE_NAME))
+			assetManifest = loadAssetManifest();
+	}
+
+	/**
+	 * Finds a file in the index, a device file is looked at first and its part of the index read again if it no longer
+	 * has the length or time it was indexed with so we never hand out the old hash for new content
+	 *
+	 * @param file the file with path info as it is requested
+	 * @return what we know about the file or null if it is not in the index
+	 */
+	private AssetIndex.Entry findCurrent(String file) {
+		AssetIndex.Entry entry = assetIndex.find(file);
+		if (entry == null || !useExternalFiles || entry.isCurrent(new File(String.format(externalPathFormat, file))))
+			return entry;
+		synchronized (this) {
+			// another request may have already read it again
+			entry = assetIndex.find(file);
+			if (entry == null || entry.isCurrent(new File(String.format(externalPathFormat, file))))
+				return entry;
+			onFileChanged(file);
+			return assetIndex.find(file);
+		}
+	}
+
+	/**
+	 * Reads the manifest the asset pipeline wrote to the web root
+	 *
+	 * @return the manifest or null if there is none
+	 */
+	private AssetManifest loadAssetManifest() {
+		String manifestFile = '/' + AssetManifest.FILE_NAME;
+		if (!exists(manifestFile, null))
+			return null;
+		try {
+			return AssetManifest.read(getFileStreamFor(manifestFile, null));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @return the manifest of the processed web root or null if it was not processed, hand this to the HttpApplication
+	 */
+	@SuppressWarnings("unused")
+	public AssetManifest getAssetManifest() {
+		return assetManifest;
+	}
+
+	/**
+	 * @return the paths we remember are not on the device file system
+	 */
+	@SuppressWarnings("unused")
+	public MissingFileCache getMissingFileCache() {
+		return missingFiles;
+	}
+
+	/**
+	 * @return the index of the files we serve
+	 */
+	@SuppressWarnings("unused")
+	public AssetIndex getAssetIndex() {
+		return assetIndex;
 	}
 
 	/**
@@ -63,10 +162,15 @@ public class AndroidContextAssetsFileResolver implements IFileResolver {
 	 */
 	@Override
 	public boolean exists(String file, String language) {
-		String path = !useExternalFiles ? String.format("%s%s", compiledUrl, file) : String.format(externalPathFormat, file);
-		Log.v(Constants.Tag, String.format(useExternalFiles ? FS_FORMAT : ASSET_FORMAT, path));
-		return !useExternalFiles || new File(path).exists();
-
+		if (findCurrent(file) != null)
+			return true;
+		if (!useExternalFiles || missingFiles.isMissing(file))
+			return false;
+		// files may have been added to the device since the index was built
+		boolean found = new File(String.format(externalPathFormat, file)).isFile();
+		if (!found)
+			missingFiles.add(file);
+		return found;
 	}
 
 	/**
@@ -85,4 +189,69 @@ public class AndroidContextAssetsFileResolver implements IFileResolver {
 		}
 		return new FileInputStream(new File(String.format(externalPathFormat, file)));
 	}
+
+	/**
+	 * Used to find out how big a file is before it is streamed
+	 *
+	 * @param file     the file to request
+	 * @param language the language of the request
+	 * @return the length in bytes or -1 if it is not known
+	 */
+	@Override
+	public long getFileLength(String file, String language) {
+		AssetIndex.Entry entry = findCurrent(file);
+		if (entry != null)
+			return entry.getLength();
+		if (!useExternalFiles)
+			return -1;
+		// added to the device since the index was built
+		File deviceFile = new File(String.format(externalPathFormat, file));
+		return deviceFile.isFile() ? deviceFile.length() : -1;
+	}
+
+	/**
+	 * Used to find out when a file last changed. Assets inside the apk do not keep their times so only files on the
+	 * device file system have one
+	 *
+	 * @param file     the file to request
+	 * @param language the language of the request
+	 * @return the time in millis since the epoch or -1 if it is not known
+	 */
+	@Override
+	public long getLastModified(String file, String language) {
+		AssetIndex.Entry entry = findCurrent(file);
+		if (entry != null)
+			return entry.getLastModified();
+		if (!useExternalFiles)
+			return -1;
+		long lastModified = new File(String.format(externalPathFormat, file)).lastModified();
+		return lastModified == 0 ? -1 : lastModified;
+	}
+
+	/**
+	 * Used to get the hash the index took of the file, a device file is hashed the first time it is asked for and again
+	 * after it changes
+	 *
+	 * @param file     the file to request
+	 * @param language the language of the request
+	 * @return the hash as hex or null if it is not known
+	 */
+	@Override
+	public String getContentHash(String file, String language) {
+		AssetIndex.Entry entry = findCurrent(file);
+		return entry == null ? null : entry.getContentHash();
+	}
+
+	/**
+	 * Used to get the type the index worked out for the file
+	 *
+	 * @param file     the file to request
+	 * @param language the language of the request
+	 * @return the type or null if the file is not in the index
+	 */
+	@Override
+	public MimeType getMimeType(String file, String language) {
+		AssetIndex.Entry entry = assetIndex.find(file);
+		return entry == null ? null : entry.getMimeType();
+	}
 }
\ No newline at end of file
@@ -0,0 +1,366 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import com.foxhorn.foxyserver.Constants;
+import com.foxhorn.foxyserver.text.StringUtils;
+import com.foxhorn.foxyserver.web.MimeType;
+import com.foxhorn.foxyserver.web.MimeTypeRegistry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This is a snapshot of every file under a web root, taken once so checking if a file is there, how big it is or when
+ * it changed never has to touch the apk or the file system. Files on the device are only looked at while the index is
+ * built, their content is hashed the first time the hash is asked for so a big web root of media starts quickly.
+ * Apk assets have to be read to learn their length so they are hashed in the same pass, in parallel. An index never
+ * changes once built, when the files change a new one is made and swapped in
+ */
+public class AssetIndex {
+
+	private static final int READ_BUFFER_SIZE = 8192;
+
+	private final Map<String, Entry> entries;
+	private final File root;
+	private final Source source;
+	private final long builtAt;
+
+	private AssetIndex(Map<String, Entry> entries, File root, Source source) {
+		this.entries = entries;
+		this.root = root;
+		this.source = source;
+		builtAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * Indexes the files of the apk assets under a root directory
+	 *
+	 * @param assetManager the assets of the app
+	 * @param root         the asset directory that is the web root
+	 * @return the index
+	 */
+	public static AssetIndex build(final AssetManager assetManager, final String root) {
+		List<String> files = new ArrayList<>();
+		listAssets(assetManager, root, "", files);
+		return build(files, null, new Source() {
+			@Override
+			public InputStream open(String file) throws IOException {
+				return assetManager.open(root + file);
+			}
+
+			@Override
+			public long getLastModified(String file) {
+				// assets inside the apk do not keep their times
+				return -1;
+			}
+		});
+	}
+
+	/**
+	 * Indexes the files of a directory on the device
+	 *
+	 * @param root the directory that is the web root
+	 * @return the index
+	 */
+	public static AssetIndex build(final File root) {
+		List<String> files = new ArrayList<>();
+		WebRootFiles.list(root, "", files);
+		return build(files, root, new Source() {
+			@Override
+			public InputStream open(String file) throws IOException {
+				return new FileInputStream(new File(root, file));
+			}
+
+			@Override
+			public long getLastModified(String file) {
+				long lastModified = new File(root, file).lastModified();
+				return lastModified == 0 ? -1 : lastModified;
+			}
+		});
+	}
+
+	/**
+	 * Makes a new index that only differs from this one in a file or directory that changed, nothing else is read
+	 * again. Apk assets can not change so an index of them is returned as is
+	 *
+	 * @param file the file or directory with path info as it is requested
+	 * @return the new index
+	 */
+	public AssetIndex withChange(String file) {
+		if (root == null)
+			return this;
+		Map<String, Entry> changed = new HashMap<>(entries);
+		// whatever was under a path that is now gone or a directory is dropped and what is there now is read
+		String directoryPrefix = file + '/';
+		Iterator<String> paths = changed.keySet().iterator();
+		while (paths.hasNext()) {
+			String path = paths.next();
+			if (path.equals(file) || path.startsWith(directoryPrefix))
+				paths.remove();
+		}
+		List<String> files = new ArrayList<>();
+		File changedFile = new File(root, file);
+		if (changedFile.isDirectory())
+			WebRootFiles.list(root, file, files);
+		else if (changedFile.isFile())
+			files.add(file);
+		for (String path : files)
+			changed.put(path, describe(root, source, path));
+		return new AssetIndex(Collections.unmodifiableMap(changed), root, source);
+	}
+
+	/**
+	 * @param file the file with path info as it is requested
+	 * @return what we know about the file or null if it is not in the index
+	 */
+	public Entry find(String file) {
+		return entries.get(file);
+	}
+
+	/**
+	 * @return how many files are in the index
+	 */
+	@SuppressWarnings("unused")
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return when the index was built in millis since the epoch
+	 */
+	@SuppressWarnings("unused")
+	public long getBuiltAt() {
+		return builtAt;
+	}
+
+	private static AssetIndex build(List<String> files, File root, final Source source) {
+		Map<String, Entry> entries = new HashMap<>(files.size() * 2);
+		if (root != null) {
+			for (String file : files)
+				entries.put(file, describe(root, source, file));
+			Log.d(Constants.Tag, String.format("indexed %s static files", entries.size()));
+			return new AssetIndex(Collections.unmodifiableMap(entries), root, source);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors())));
+		try {
+			List<Future<Entry>> results = new ArrayList<>(files.size());
+			for (final String file : files) {
+				results.add(executor.submit(new Callable<Entry>() {
+					@Override
+					public Entry call() throws Exception {
+						return read(source, file);
+					}
+				}));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				try {
+					Entry entry = results.get(i).get();
+					entries.put(entry.path, entry);
+				} catch (ExecutionException e) {
+					// leave it out, it will 404 like any file we can not read
+					Log.w(Constants.Tag, String.format("could not index %s", files.get(i)), e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			e.printStackTrace();
+		} finally {
+			executor.shutdownNow();
+		}
+		Log.d(Constants.Tag, String.format("indexed %s static files", entries.size()));
+		return new AssetIndex(Collections.unmodifiableMap(entries), root, source);
+	}
+
+	/**
+	 * Reads a file through once to count its bytes and hash them
+	 */
+	private static Entry read(Source source, String file) throws IOException {
+		MessageDigest digest = WebRootFiles.newDigest();
+		long length = 0;
+		InputStream in = source.open(file);
+		try {
+			byte[] buffer = new byte[READ_BUFFER_SIZE];
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, count);
+				length += count;
+			}
+		} finally {
+			in.close();
+		}
+		return new Entry(file, length, source.getLastModified(file), MimeTypeRegistry.getInstance().forFile(file), StringUtils.bytesToHex(WebRootFiles.hash(digest)), null);
+	}
+
+	/**
+	 * Looks at a file on the device without reading it, its content is hashed when the hash is first asked for
+	 */
+	private static Entry describe(File root, Source source, String file) {
+		return new Entry(file, new File(root, file).length(), source.getLastModified(file), MimeTypeRegistry.getInstance().forFile(file), null, source);
+	}
+
+	/**
+	 * Hashes the content of a file
+	 */
+	private static String hash(Source source, String file) throws IOException {
+		InputStream in = source.open(file);
+		try {
+			return StringUtils.bytesToHex(WebRootFiles.hash(in));
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Walks the asset directories, an asset that lists no children is a file since aapt drops empty directories
+	 */
+	private static void listAssets(AssetManager assetManager, String root, String directory, List<String> files) {
+		String[] names;
+		try {
+			names = assetManager.list(root + directory);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		for (String name : names) {
+			String path = directory + '/' + name;
+			String[] children;
+			try {
+				children = assetManager.list(root + path);
+			} catch (IOException e) {
+				e.printStackTrace();
+				continue;
+			}
+			if (children == null || children.length == 0)
+				files.add(path);
+			else
+				listAssets(assetManager, root, path, files);
+		}
+	}
+
+	/**
+	 * Where the bytes of the files come from
+	 */
+	private interface Source {
+		InputStream open(String file) throws IOException;
+
+		long getLastModified(String file);
+	}
+
+	/**
+	 * What we know about one file
+	 */
+	public static class Entry {
+		private final String path;
+		private final long length;
+		private final long lastModified;
+		private final MimeType mimeType;
+		// where to read the file from to hash it, null once it is hashed or if it was hashed while indexing
+		private volatile Source source;
+		private volatile String contentHash;
+
+		Entry(String path, long length, long lastModified, MimeType mimeType, String contentHash, Source source) {
+			this.path = path;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.mimeType = mimeType;
+			this.contentHash = contentHash;
+			this.source = source;
+		}
+
+		/**
+		 * @return the file with path info as it is requested
+		 */
+		@SuppressWarnings("unused")
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * @return how many bytes the file held when it was indexed
+		 */
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * @return when the file last changed when it was indexed, -1 for apk assets
+		 */
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * @return the type worked out from the file extension
+		 */
+		public MimeType getMimeType() {
+			return mimeType;
+		}
+
+		/**
+		 * Checks a file on the device against what was indexed, only its length and time are looked at so this does
+		 * not read it
+		 *
+		 * @param file the file on the device this entry was made from
+		 * @return true if the file still has the length and time it had when it was indexed
+		 */
+		boolean isCurrent(File file) {
+			long modified = file.lastModified();
+			return file.length() == length && (modified == 0 ? -1 : modified) == lastModified;
+		}
+
+		/**
+		 * A file on the device is read and hashed the first time this is called
+		 *
+		 * @return a hex hash of the content of the file or null if it could not be read
+		 */
+		public String getContentHash() {
+			String hash = contentHash;
+			Source hashSource = source;
+			if (hash == null && hashSource != null) {
+				try {
+					// two requests may both hash it the first time, they get the same answer
+					hash = hash(hashSource, path);
+					contentHash = hash;
+					source = null;
+				} catch (IOException e) {
+					Log.w(Constants.Tag, String.format("could not hash %s", path), e);
+				}
+			}
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import com.foxhorn.foxyserver.web.ByteBufferInputStream;
+import com.foxhorn.foxyserver.web.MimeType;
+import com.foxhorn.foxyserver.web.MimeTypeRegistry;
+import com.foxhorn.foxyserver.web.api.IFileMetadata;
+import com.foxhorn.foxyserver.web.api.IFileResolver;
+import com.foxhorn.foxyserver.web.hosting.pack.AssetManifest;
+import com.foxhorn.foxyserver.web.hosting.pack.AssetPack;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This is a file resolver that serves the files of one asset pack (see AssetPack) that is memory mapped once when it
+ * is created. Finding a file is a map lookup and reading one reads straight from the map so no file is ever opened
+ * per request. A pack shipped in the apk has to be stored uncompressed so it can be mapped, add the pack extension to
+ * aaptOptions noCompress in your build.gradle
+ * Please be aware that this does not yet support getting files based on languages
+ */
+public class AssetPackFileResolver implements IFileResolver, IFileMetadata {
+
+	private final AssetPack assetPack;
+	private final Map<String, MimeType> mimeTypes;
+	private final AssetManifest assetManifest;
+
+	/**
+	 * Creates our file resolver from a pack in the apk assets
+	 *
+	 * @param androidContext the android application context
+	 * @param assetName      the name of the pack in the assets ie htdocs.pack
+	 * @throws IOException if the pack can not be mapped or read
+	 */
+	public AssetPackFileResolver(Context androidContext, String assetName) throws IOException {
+		AssetFileDescriptor descriptor = androidContext.getAssets().openFd(assetName);
+		// the stream owns the descriptor and closes it, the apk is mapped from where the pack starts in it
+		assetPack = AssetPack.read(map(descriptor.createInputStream(), descriptor.getStartOffset(), descriptor.getLength()));
+		mimeTypes = findMimeTypes(assetPack);
+		assetManifest = loadAssetManifest();
+	}
+
+	/**
+	 * Creates our file resolver from a pack on the device file system
+	 *
+	 * @param packFile the pack
+	 * @throws IOException if the pack can not be mapped or read
+	 */
+	public AssetPackFileResolver(File packFile) throws IOException {
+		assetPack = AssetPack.read(map(new FileInputStream(packFile), 0, packFile.length()));
+		mimeTypes = findMimeTypes(assetPack);
+		assetManifest = loadAssetManifest();
+	}
+
+	/**
+	 * Maps part of a file, the map stays good after the file is closed
+	 */
+	private static ByteBuffer map(FileInputStream in, long offset, long length) throws IOException {
+		try {
+			return in.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static Map<String, MimeType> findMimeTypes(AssetPack assetPack) {
+		Map<String, MimeType> mimeTypes = new HashMap<>(assetPack.getPaths().size() * 2);
+		for (String path : assetPack.getPaths())
+			mimeTypes.put(path, MimeTypeRegistry.getInstance().forFile(path));
+		return mimeTypes;
+	}
+
+	/**
+	 * Reads the manifest if the pack was made from a web root the asset pipeline processed
+	 */
+	private AssetManifest loadAssetManifest() throws IOException {
+		InputStream in = getFileStreamFor('/' + AssetManifest.FILE_NAME, null);
+		return in == null ? null : AssetManifest.read(in);
+	}
+
+	/**
+	 * @return the manifest of the processed web root or null if it was not processed, hand this to the HttpApplication
+	 */
+	@SuppressWarnings("unused")
+	public AssetManifest getAssetManifest() {
+		return assetManifest;
+	}
+
+	/**
+	 * @return the pack we serve from
+	 */
+	@SuppressWarnings("unused")
+	public AssetPack getAssetPack() {
+		return assetPack;
+	}
+
+	/**
+	 * Used to check if a file exists
+	 *
+	 * @param file     the file with path info to check for
+	 * @param language the language of the request
+	 * @return true if the file is there false if not
+	 */
+	@Override
+	public boolean exists(String file, String language) {
+		return assetPack.find(file) != null;
+	}
+
+	/**
+	 * Called to get a input stream for the file that you want to get, the stream reads straight from the mapped pack
+	 * and a response hands the slice it reads to the connection as is
+	 *
+	 * @param file     the file to request
+	 * @param language the language of the request
+	 * @return the input stream or null
+	 * @throws IOException
+	 */
+	@Override
+	public InputStream getFileStreamFor(String file, String language) throws IOException {
+		AssetPack.Entry entry = assetPack.find(file);
+		return entry == null ? null : new ByteBufferInputStream(assetPack.slice(entry));
+	}
+
+	/**
+	 * Used to find out how big a file is before it is streamed
+	 *
+	 * @param file     the file to request
+	 * @param language the language of the request
+	 * @return the length in bytes or -1 if it is not known
+	 */
+	@Override
+	public long getFileLength(String file, String language) {
+		AssetPack.Entry entry = assetPack.find(file);
+		return entry == null ? -1 : entry.getLength();
+	}
+
+	/**
+	 * Used to find out when a file last changed, this is when the source file changed before it was packed
+	 *
+	 * @param file     the file to request
+	 * @param language the language of the request
+	 * @return the time in millis since the epoch or -1 if it is not known
+	 */
+	@Override
+	public long getLastModified(String file, String language) {
+		AssetPack.Entry entry = assetPack.find(file);
+		return entry == null || entry.getLastModified() <= 0 ? -1 : entry.getLastModified();
+	}
+
+	/**
+	 * Used to get the hash that was taken of the file when it was packed
+	 *
+	 * @param file     the file to request
+	 * @param language the language of the request
+	 * @return the hash as hex or null if it is not known
+	 */
+	@Override
+	public String getContentHash(String file, String language) {
+		AssetPack.Entry entry = assetPack.find(file);
+		return entry == null ? null : entry.getContentHash();
+	}
+
+	/**
+	 * Used to get the type worked out for the file when the pack was opened
+	 *
+	 * @param file     the file to request
+	 * @param language the language of the request
+	 * @return the type or null if the file is not in the pack
+	 */
+	@Override
+	public MimeType getMimeType(String file, String language) {
+		return mimeTypes.get(file);
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.foxhorn.foxyserver.web.hosting;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This is a table of Cache-Control directives keyed by path patterns. Rules are checked in the order they were added
+ * and the first one that matches wins. A pattern is an exact path, or can use * for any run of characters inside one
+ * path segment and ** for anything at all ie /libs/** or /img/*.png. Patterns are compiled when they are added, exact
+ * paths and trailing ** patterns are checked with a plain string compare so matching costs next to nothing
+ */
+public class CacheControlPolicy {
+
+	private static final Pattern MAX_AGE = Pattern.compile("max-age\\s*=\\s*(\\d+)");
+
+	// replaced as a whole when a rule is added so workers can read it without locking
+	private volatile Rule[] rules = new Rule[0];
+
+	/**
+	 * Adds a rule to the end of the table
+	 *
+	 * @param pathPattern  the paths the rule covers ie /libs/**
+	 * @param cacheControl the Cache-Control value to send ie public, max-age=31536000, immutable
+	 */
+	public synchronized void addRule(String pathPattern, String cacheControl) {
+		Rule[] updated = new Rule[rules.length + 1];
+		System.arraycopy(rules, 0, updated, 0, rules.length);
+		updated[rules.length] = new Rule(pathPattern, cacheControl);
+		rules = updated;
+	}
+
+	/**
+	 * @param path the requested path
+	 * @return the first rule that matches or null if none do
+	 */
+	public Rule findRule(String path) {
+		for (Rule rule : rules) {
+			if (rule.matches(path))
+				return rule;
+		}
+		return null;
+	}
+
+	/**
+	 * This is one row of the table
+	 */
+	public static class Rule {
+		private final String exactPath;
+		private final String prefix;
+		private final Pattern pattern;
+		private final String cacheControl;
+		private final long maxAgeMillis;
+
+		Rule(String pathPattern, String cacheControl) {
+			this.cacheControl = cacheControl;
+			Matcher maxAge = MAX_AGE.matcher(cacheControl);
+			maxAgeMillis = maxAge.find() ? Long.parseLong(maxAge.group(1)) * 1000 : -1;
+			int firstWildcard = pathPattern.indexOf('*');
+			if (firstWildcard < 0) {
+				exactPath = pathPattern;
+				prefix = null;
+				pattern = null;
+			} else if (firstWildcard == pathPattern.length() - 2 && pathPattern.endsWith("**")) {
+				exactPath = null;
+				prefix = pathPattern.substring(0, firstWildcard);
+				pattern = null;
+			} else {
+				exactPath = null;
+				prefix = null;
+				pattern = Pattern.compile(globToRegex(pathPattern));
+			}
+		}
+
+		boolean matches(String path) {
+			if (exactPath != null)
+				return exactPath.equals(path);
+			if (prefix != null)
+				return path.startsWith(prefix);
+			return pattern.matcher(path).matches();
+		}
+
+		/**
+		 * @return the Cache-Control value to send
+		 */
+		public String getCacheControl() {
+			return cacheControl;
+		}
+
+		/**
+		 * @return the max-age of the rule in millis, used for Expires, or -1 if it has none
+		 */
+		public long getMaxAgeMillis() {
+			return maxAgeMillis;
+		}
+
+		private static String globToRegex(String glob) {
+			StringBuilder regex = new StringBuilder();
+			int literalStart = 0;
+			for (int i = 0; i < glob.length(); i++) {
+				if (glob.charAt(i) != '*')
+					continue;
+				if (i > literalStart)
+					regex.append(Pattern.quote(glob.substring(literalStart, i)));
+				if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+					regex.append(".*");
+					i++;
+				} else {
+					regex.append("[^/]*");
+				}
+				literalStart = i + 1;
+			}
+			if (literalStart < glob.length())
+				regex.append(Pattern.quote(glob.substring(literalStart)));
+			return regex.toString();
+		}
+	}
+}
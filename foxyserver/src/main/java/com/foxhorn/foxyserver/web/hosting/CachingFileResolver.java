@@ -0,0 +1,323 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting;
+
+import com.foxhorn.foxyserver.web.MimeType;
+import com.foxhorn.foxyserver.web.api.IFileChangeListener;
+import com.foxhorn.foxyserver.web.api.IFileMetadata;
+import com.foxhorn.foxyserver.web.api.IFileResolver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is a file resolver that wraps another one and keeps the files it hands out in memory so hot files do not have
+ * to be opened and read again for every request. The least recently used files are dropped once the cache goes over
+ * its byte budget, pinned files are never dropped. Files bigger than the largest cacheable size are passed straight
+ * through. This is meant for apk assets which can not change while the app is running, if you serve from the device
+ * file system hook this up to a DeviceFileSystemWatcher or anything cached will not see edits till it is invalidated.
+ * A file is cached once whatever language it was asked for in, so do not wrap a resolver that serves different content
+ * per language
+ */
+public class CachingFileResolver implements IFileResolver, IFileMetadata, IFileChangeListener {
+
+	private static final int READ_BUFFER_SIZE = 8192;
+
+	private final IFileResolver fileResolver;
+	// null when the wrapped resolver can not tell us anything about its files
+	private final IFileMetadata fileMetadata;
+	private final long maxCacheBytes;
+	private final int maxFileBytes;
+	private final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<>(64, 0.75f, true);
+	private final Set<String> pinnedFiles = new HashSet<>();
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private long cachedBytes;
+	// bumped whenever files are dropped so a read that raced an invalidation is not cached
+	private long generation;
+
+	/**
+	 * Creates our file resolver
+	 *
+	 * @param fileResolver  the file resolver that actually finds the files
+	 * @param maxCacheBytes how many bytes of files may be kept in memory
+	 * @param maxFileBytes  files bigger than this are never cached
+	 */
+	public CachingFileResolver(IFileResolver fileResolver, long maxCacheBytes, int maxFileBytes) {
+		this.fileResolver = fileResolver;
+		fileMetadata = fileResolver instanceof IFileMetadata ? (IFileMetadata) fileResolver : null;
+		this.maxCacheBytes = maxCacheBytes;
+		this.maxFileBytes = maxFileBytes;
+	}
+
+	/**
+	 * Marks a file so it is never evicted once it has been loaded. Pinned files still count towards the byte budget
+	 *
+	 * @param file the file with path info as it is requested
+	 */
+	public void pin(String file) {
+		synchronized (cache) {
+			pinnedFiles.add(file);
+		}
+	}
+
+	/**
+	 * Used to check if a file exists
+	 *
+	 * @param file     the file with path info to check for
+	 * @param language the language of the request
+	 * @return true if the file is there false if not
+	 */
+	@Override
+	public boolean exists(String file, String language) {
+		synchronized (cache) {
+			if (cache.containsKey(file))
+				return true;
+		}
+		return fileResolver.exists(file, language);
+	}
+
+	/**
+	 * Called to get a input stream for the file that you want to get. Cached files come straight from memory, anything
+	 * else is read from the wrapped resolver and kept if it is small enough
+	 *
+	 * @param file     the file to request
+	 * @param language the language of the request
+	 * @return the input stream or null
+	 * @throws IOException
+	 */
+	@Override
+	public InputStream getFileStreamFor(String file, String language) throws IOException {
+		byte[] data;
+		long readGeneration;
+		synchronized (cache) {
+			data = cache.get(file);
+			readGeneration = generation;
+		}
+		if (data != null) {
+			hitCount.incrementAndGet();
+			return new ByteArrayInputStream(data);
+		}
+		missCount.incrementAndGet();
+		InputStream source = fileResolver.getFileStreamFor(file, language);
+		if (source == null)
+			return null;
+		long fileLength = fileMetadata == null ? -1 : fileMetadata.getFileLength(file, language);
+		if (fileLength > maxFileBytes || fileLength > maxCacheBytes)
+			return source;
+		// read up to one byte more than we would cache so we can tell when the file is too big
+		ByteArrayOutputStream collected = new ByteArrayOutputStream(fileLength >= 0 ? (int) fileLength : READ_BUFFER_SIZE);
+		byte[] buffer = new byte[READ_BUFFER_SIZE];
+		long limit = Math.min(maxFileBytes, maxCacheBytes) + 1L;
+		try {
+			int count;
+			while (collected.size() < limit && (count = source.read(buffer, 0, (int) Math.min(buffer.length, limit - collected.size()))) != -1)
+				collected.write(buffer, 0, count);
+		} catch (IOException e) {
+			source.close();
+			throw e;
+		}
+		if (collected.size() == limit) {
+			// too big after all so send what we read followed by the rest of the file
+			return new SequenceInputStream(new ByteArrayInputStream(collected.toByteArray()), source);
+		}
+		source.close();
+		data = collected.toByteArray();
+		put(file, data, readGeneration);
+		return new ByteArrayInputStream(data);
+	}
+
+	/**
+	 * Used to find out how big a file is before it is streamed
+	 *
+	 * @param file     the file to request
+	 * @param language the language of the request
+	 * @return the length in bytes or -1 if it is not known
+	 */
+	@Override
+	public long getFileLength(String file, String language) {
+		synchronized (cache) {
+			byte[] data = cache.get(file);
+			if (data != null)
+				return data.length;
+		}
+		return fileMetadata == null ? -1 : fileMetadata.getFileLength(file, language);
+	}
+
+	/**
+	 * Used to find out when a file last changed
+	 *
+	 * @param file     the file to request
+	 * @param language the language of the request
+	 * @return the time in millis since the epoch or -1 if it is not known
+	 */
+	@Override
+	public long getLastModified(String file, String language) {
+		return fileMetadata == null ? -1 : fileMetadata.getLastModified(file, language);
+	}
+
+	/**
+	 * Used to get a hash of the file content if the wrapped resolver already has one
+	 *
+	 * @param file     the file to request
+	 * @param language the language of the request
+	 * @return the hash as hex or null if it is not known
+	 */
+	@Override
+	public String getContentHash(String file, String language) {
+		return fileMetadata == null ? null : fileMetadata.getContentHash(file, language);
+	}
+
+	/**
+	 * Used to get the type of a file if the wrapped resolver already worked it out
+	 *
+	 * @param file     the file to request
+	 * @param language the language of the request
+	 * @return the type or null if it is not known
+	 */
+	@Override
+	public MimeType getMimeType(String file, String language) {
+		return fileMetadata == null ? null : fileMetadata.getMimeType(file, language);
+	}
+
+	/**
+	 * Drops a file, or every file under a directory, from the cache, pinned or not, so the next request reads it again
+	 *
+	 * @param file the file or directory with path info as it is requested
+	 */
+	public void invalidate(String file) {
+		String directoryPrefix = file + '/';
+		synchronized (cache) {
+			generation++;
+			Iterator<Map.Entry<String, byte[]>> entries = cache.entrySet().iterator();
+			while (entries.hasNext()) {
+				Map.Entry<String, byte[]> entry = entries.next();
+				String entryFile = entry.getKey();
+				if (entryFile.equals(file) || entryFile.startsWith(directoryPrefix)) {
+					cachedBytes -= entry.getValue().length;
+					entries.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops what we have for a file that changed
+	 *
+	 * @param file the file or directory with path info as it is requested
+	 */
+	@Override
+	public void onFileChanged(String file) {
+		invalidate(file);
+	}
+
+	/**
+	 * Drops everything from the cache
+	 */
+	public void clear() {
+		synchronized (cache) {
+			generation++;
+			cache.clear();
+			cachedBytes = 0;
+		}
+	}
+
+	/**
+	 * @return how many requests were served from memory
+	 */
+	@SuppressWarnings("unused")
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return how many requests had to go to the wrapped resolver
+	 */
+	@SuppressWarnings("unused")
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return how many files were dropped to stay under the byte budget
+	 */
+	@SuppressWarnings("unused")
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * @return how many bytes of files are in memory right now
+	 */
+	@SuppressWarnings("unused")
+	public long getCachedBytes() {
+		synchronized (cache) {
+			return cachedBytes;
+		}
+	}
+
+	/**
+	 * @return how many files are in memory right now
+	 */
+	@SuppressWarnings("unused")
+	public int getCachedFileCount() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	private void put(String file, byte[] data, long readGeneration) {
+		synchronized (cache) {
+			if (generation != readGeneration) {
+				// the file may have changed while we read it so what we have could be the old content
+				return;
+			}
+			byte[] previous = cache.put(file, data);
+			if (previous != null)
+				cachedBytes -= previous.length;
+			cachedBytes += data.length;
+			// the iterator walks from least to most recently used
+			Iterator<Map.Entry<String, byte[]>> entries = cache.entrySet().iterator();
+			while (cachedBytes > maxCacheBytes && entries.hasNext()) {
+				Map.Entry<String, byte[]> entry = entries.next();
+				String entryFile = entry.getKey();
+				if (pinnedFiles.contains(entryFile) || entryFile.equals(file))
+					continue;
+				cachedBytes -= entry.getValue().length;
+				entries.remove();
+				evictionCount.incrementAndGet();
+			}
+			if (cachedBytes > maxCacheBytes && !pinnedFiles.contains(file)) {
+				// everything else is pinned so the new file does not fit
+				cache.remove(file);
+				cachedBytes -= data.length;
+			}
+		}
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.foxhorn.foxyserver.web.hosting;
+
+import android.util.Log;
+
+import com.foxhorn.foxyserver.Constants;
+import com.foxhorn.foxyserver.FoxyServerSettings;
+import com.foxhorn.foxyserver.text.StringUtils;
+import com.foxhorn.foxyserver.web.MultipartPart;
+import com.foxhorn.foxyserver.web.api.IMultipartPartHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This takes the parts of a multipart/form-data upload and writes the files straight to a directory on the device
+ * file system, working out a SHA-256 of each one as it is written. Plain form fields are kept as strings. Files are
+ * copied through a small buffer so memory use does not grow with the size of the upload
+ */
+public class DeviceFileSystemUploadSink implements IMultipartPartHandler {
+
+	private static final int COPY_BUFFER_SIZE = 8192;
+	private static final int MAX_FORM_FIELD_BYTES = 64 * 1024;
+	private static final String CHECKSUM_ALGORITHM = "SHA-256";
+
+	private final File directory;
+	private final List<UploadedFile> uploadedFiles = new ArrayList<>();
+	private final Map<String, String> formFields = new HashMap<>();
+
+	/**
+	 * Creates our sink
+	 *
+	 * @param uploadPath the directory to write to, relative to FoxyServerSettings.getDeviceFileSystemAppPath()
+	 */
+	public DeviceFileSystemUploadSink(String uploadPath) {
+		directory = new File(String.format(FoxyServerSettings.getInstance().getDeviceFileSystemAppPath(), uploadPath));
+	}
+
+	@Override
+	public void onPart(MultipartPart part, InputStream content) throws IOException {
+		if (part.isFile()) {
+			uploadedFiles.add(writeFile(part, content));
+		} else if (part.getName() != null) {
+			formFields.put(part.getName(), readField(content));
+		}
+	}
+
+	/**
+	 * @return the files that were written in the order they came
+	 */
+	public List<UploadedFile> getUploadedFiles() {
+		return uploadedFiles;
+	}
+
+	/**
+	 * @return the plain form fields that came with the files
+	 */
+	@SuppressWarnings("unused")
+	public Map<String, String> getFormFields() {
+		return formFields;
+	}
+
+	private UploadedFile writeFile(MultipartPart part, InputStream content) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException(String.format("could not create upload directory %s", directory));
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e.toString());
+		}
+		// write to a temp file first so a failed upload never leaves half a file under the real name
+		File partialFile = File.createTempFile("upload", ".part", directory);
+		boolean complete = false;
+		long length = 0;
+		try {
+			FileOutputStream out = new FileOutputStream(partialFile);
+			try {
+				byte[] buffer = new byte[COPY_BUFFER_SIZE];
+				int count;
+				while ((count = content.read(buffer)) != -1) {
+					out.write(buffer, 0, count);
+					digest.update(buffer, 0, count);
+					length += count;
+				}
+			} finally {
+				out.close();
+			}
+			File target = new File(directory, safeFileName(part.getFileName()));
+			if (target.exists() && !target.delete())
+				throw new IOException(String.format("could not replace %s", target));
+			if (!partialFile.renameTo(target))
+				throw new IOException(String.format("could not move upload to %s", target));
+			complete = true;
+			Log.d(Constants.Tag, String.format("wrote upload %s (%s bytes) to %s", part.getFileName(), length, target));
+			return new UploadedFile(part.getName(), part.getFileName(), target, length, StringUtils.bytesToHex(digest.digest()));
+		} finally {
+			if (!complete && !partialFile.delete())
+				Log.w(Constants.Tag, String.format("could not delete partial upload %s", partialFile));
+		}
+	}
+
+	private static String readField(InputStream content) throws IOException {
+		ByteArrayOutputStream field = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int count;
+		while ((count = content.read(buffer)) != -1) {
+			if (field.size() + count > MAX_FORM_FIELD_BYTES)
+				throw new IOException(String.format("form field is bigger than %s bytes", MAX_FORM_FIELD_BYTES));
+			field.write(buffer, 0, count);
+		}
+		return field.toString("UTF-8");
+	}
+
+	/**
+	 * Drops any path the browser sent along with the name and anything that should not be in a file name
+	 */
+	private static String safeFileName(String fileName) {
+		String name = fileName.substring(Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\')) + 1);
+		name = name.replaceAll("[^A-Za-z0-9._-]", "_");
+		if (name.isEmpty() || name.startsWith("."))
+			name = "upload" + name;
+		return name;
+	}
+
+	/**
+	 * This is a file that was written by the sink
+	 */
+	public static class UploadedFile {
+		private final String fieldName;
+		private final String fileName;
+		private final File file;
+		private final long length;
+		private final String checksum;
+
+		UploadedFile(String fieldName, String fileName, File file, long length, String checksum) {
+			this.fieldName = fieldName;
+			this.fileName = fileName;
+			this.file = file;
+			this.length = length;
+			this.checksum = checksum;
+		}
+
+		/**
+		 * @return the form field the file came in
+		 */
+		@SuppressWarnings("unused")
+		public String getFieldName() {
+			return fieldName;
+		}
+
+		/**
+		 * @return the file name the browser sent
+		 */
+		@SuppressWarnings("unused")
+		public String getFileName() {
+			return fileName;
+		}
+
+		/**
+		 * @return where the file was written
+		 */
+		@SuppressWarnings("unused")
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * @return how many bytes were written
+		 */
+		@SuppressWarnings("unused")
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * @return the SHA-256 of the file as upper case hex
+		 */
+		@SuppressWarnings("unused")
+		public String getChecksum() {
+			return checksum;
+		}
+	}
+}
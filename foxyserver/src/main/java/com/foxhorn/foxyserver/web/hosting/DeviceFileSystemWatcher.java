@@ -0,0 +1,167 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting;
+
+import android.os.FileObserver;
+import android.util.Log;
+
+import com.foxhorn.foxyserver.Constants;
+import com.foxhorn.foxyserver.web.api.IFileChangeListener;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Watches the web root on the device file system and tells its listeners about each file that changes so they can
+ * drop what they cached for it. This lets files pushed with adb while the server runs show up without giving up on
+ * caching. A file is reported once it has been written and closed, not for every write. Android only watches one
+ * directory per observer so each directory under the root gets its own, directories that show up later are watched
+ * as they appear
+ */
+public class DeviceFileSystemWatcher {
+
+	private static final int EVENTS = FileObserver.CLOSE_WRITE | FileObserver.CREATE | FileObserver.DELETE
+			| FileObserver.MOVED_FROM | FileObserver.MOVED_TO | FileObserver.DELETE_SELF;
+
+	private final File root;
+	private final List<IFileChangeListener> listeners = new CopyOnWriteArrayList<>();
+	// the observers have to be kept or they stop when they are garbage collected
+	private final Map<String, DirectoryObserver> observers = new HashMap<>();
+	private boolean watching;
+
+	/**
+	 * Creates our watcher
+	 *
+	 * @param root the directory that is the web root
+	 */
+	public DeviceFileSystemWatcher(File root) {
+		this.root = root;
+	}
+
+	/**
+	 * @param listener told about every file that changes under the root
+	 */
+	public void addListener(IFileChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Starts watching the root and every directory under it
+	 */
+	public synchronized void start() {
+		watching = true;
+		watch("");
+	}
+
+	/**
+	 * Stops watching
+	 */
+	public synchronized void stop() {
+		watching = false;
+		for (DirectoryObserver observer : observers.values())
+			observer.stopWatching();
+		observers.clear();
+	}
+
+	/**
+	 * Watches a directory and every directory under it, the caller holds our lock
+	 *
+	 * @param directory the directory with path info relative to the root, empty for the root
+	 */
+	private void watch(String directory) {
+		if (!watching || observers.containsKey(directory))
+			return;
+		File directoryFile = new File(root, directory);
+		DirectoryObserver observer = new DirectoryObserver(directory, directoryFile.getPath());
+		observers.put(directory, observer);
+		observer.startWatching();
+		File[] children = directoryFile.listFiles();
+		if (children == null)
+			return;
+		for (File child : children) {
+			if (child.isDirectory())
+				watch(directory + '/' + child.getName());
+		}
+	}
+
+	/**
+	 * Stops watching a directory that is gone and every directory under it, the caller holds our lock
+	 */
+	private void unwatch(String directory) {
+		Iterator<Map.Entry<String, DirectoryObserver>> entries = observers.entrySet().iterator();
+		while (entries.hasNext()) {
+			Map.Entry<String, DirectoryObserver> entry = entries.next();
+			if (entry.getKey().equals(directory) || entry.getKey().startsWith(directory + '/')) {
+				entry.getValue().stopWatching();
+				entries.remove();
+			}
+		}
+	}
+
+	private void onEvent(String directory, int event, String name) {
+		if ((event & FileObserver.DELETE_SELF) != 0) {
+			synchronized (this) {
+				unwatch(directory);
+			}
+			return;
+		}
+		if (name == null)
+			return;
+		String file = directory + '/' + name;
+		if ((event & (FileObserver.CREATE | FileObserver.MOVED_TO)) != 0 && new File(root, file).isDirectory()) {
+			synchronized (this) {
+				watch(file);
+			}
+		} else if ((event & (FileObserver.DELETE | FileObserver.MOVED_FROM)) != 0) {
+			synchronized (this) {
+				unwatch(file);
+			}
+		} else if ((event & FileObserver.CREATE) != 0) {
+			// an empty new file, it is reported once it has been written
+			return;
+		}
+		Log.v(Constants.Tag, String.format("file changed: %s", file));
+		for (IFileChangeListener listener : listeners) {
+			try {
+				listener.onFileChanged(file);
+			} catch (RuntimeException e) {
+				// one broken listener should not stop the others from hearing about it
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private class DirectoryObserver extends FileObserver {
+		private final String directory;
+
+		DirectoryObserver(String directory, String path) {
+			super(path, EVENTS);
+			this.directory = directory;
+		}
+
+		@Override
+		public void onEvent(int event, String path) {
+			DeviceFileSystemWatcher.this.onEvent(directory, event & FileObserver.ALL_EVENTS, path);
+		}
+	}
+}
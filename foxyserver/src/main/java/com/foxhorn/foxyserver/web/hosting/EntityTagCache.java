@@ -0,0 +1,113 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.foxhorn.foxyserver.web.hosting;
+
+import com.foxhorn.foxyserver.text.StringUtils;
+import com.foxhorn.foxyserver.web.api.IFileChangeListener;
+import com.foxhorn.foxyserver.web.api.IFileMetadata;
+import com.foxhorn.foxyserver.web.api.IFileResolver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Works out strong ETags for static files from a hash of their content. If the file resolver already knows the hash
+ * that is used, otherwise a file is only hashed the first time it is asked for and again if its length or modified
+ * time changes, apk assets never change so they are hashed once
+ */
+public class EntityTagCache implements IFileChangeListener {
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * @param fileResolver the resolver the file comes from
+	 * @param file         the file with path info
+	 * @param language     the language of the request
+	 * @return the quoted ETag for the file or null if it could not be read
+	 */
+	public String getEntityTag(IFileResolver fileResolver, String file, String language) {
+		// a resolver that can not tell us anything about its files has them hashed once till they are said to change
+		IFileMetadata fileMetadata = fileResolver instanceof IFileMetadata ? (IFileMetadata) fileResolver : null;
+		String contentHash = fileMetadata == null ? null : fileMetadata.getContentHash(file, language);
+		if (contentHash != null)
+			return '"' + contentHash + '"';
+		long length = fileMetadata == null ? -1 : fileMetadata.getFileLength(file, language);
+		long lastModified = fileMetadata == null ? -1 : fileMetadata.getLastModified(file, language);
+		Entry entry = entries.get(file);
+		if (entry != null && entry.length == length && entry.lastModified == lastModified)
+			return entry.entityTag;
+		String entityTag = hash(fileResolver, file, language);
+		if (entityTag != null)
+			entries.put(file, new Entry(entityTag, length, lastModified));
+		return entityTag;
+	}
+
+	/**
+	 * Forgets the tag of a file, or of every file under a directory, that changed
+	 *
+	 * @param file the file or directory with path info as it is requested
+	 */
+	@Override
+	public void onFileChanged(String file) {
+		String directoryPrefix = file + '/';
+		Iterator<String> paths = entries.keySet().iterator();
+		while (paths.hasNext()) {
+			String path = paths.next();
+			if (path.equals(file) || path.startsWith(directoryPrefix))
+				paths.remove();
+		}
+	}
+
+	/**
+	 * Forgets every tag so files are hashed again
+	 */
+	@SuppressWarnings("unused")
+	public void clear() {
+		entries.clear();
+	}
+
+	private static String hash(IFileResolver fileResolver, String file, String language) {
+		try {
+			InputStream in = fileResolver.getFileStreamFor(file, language);
+			if (in == null)
+				return null;
+			try {
+				return '"' + StringUtils.bytesToHex(WebRootFiles.hash(in)) + '"';
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private static class Entry {
+		private final String entityTag;
+		private final long length;
+		private final long lastModified;
+
+		Entry(String entityTag, long length, long lastModified) {
+			this.entityTag = entityTag;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+	}
+}
@@ -26,101 +26,296 @@ import com.foxhorn.foxyserver.FoxyServerSettings;
 import com.foxhorn.foxyserver.web.HttpContext;
 import com.foxhorn.foxyserver.web.api.IFileResolver;
 import com.foxhorn.foxyserver.web.api.IHttpAuthHandler;
+import com.foxhorn.foxyserver.web.api.IHttpConnection;
+import com.foxhorn.foxyserver.web.api.IRouteTable;
+import com.foxhorn.foxyserver.web.api.IServerEngine;
+import com.foxhorn.foxyserver.web.hosting.engine.BlockingServerEngine;
+import com.foxhorn.foxyserver.web.hosting.engine.NioServerEngine;
 import com.foxhorn.foxyserver.web.hosting.handlers.BaseFoxyPathHandler;
+import com.foxhorn.foxyserver.web.hosting.pack.AssetManifest;
+import com.foxhorn.foxyserver.web.hosting.routing.PathRouter;
+import com.foxhorn.foxyserver.web.hosting.routing.RouteMatch;
 
+import java.io.File;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class is where we have registered path handlers. This is
  * Created by Matt Van Horn on 9/27/14.
  */
-public class HttpApplication implements Runnable {
+public class HttpApplication {
 
-	private final BaseFoxyPathHandler[] activeHandlers;
-	private final ExecutorService executorService = Executors.newCachedThreadPool();
+	private static final long WORKER_KEEP_ALIVE_SECONDS = 60;
+	// how long stop gives the workers to finish what they are doing before they are interrupted
+	private static final long WORKER_STOP_GRACE_SECONDS = 5;
+	private static final String OVERLOADED_REPLY_FORMAT = "HTTP/1.1 503 Service Unavailable\r\nRetry-After: %s\r\nContent-Type: text/plain\r\nContent-Length: 11\r\nConnection: close\r\n\r\nserver busy";
+
+	private final PathRouter router = new PathRouter();
+	// made again by start if the server was stopped
+	private volatile ThreadPoolExecutor executorService;
+	// fires the deadlines of async responses, made when the first one is started
+	private ScheduledExecutorService deadlineExecutor;
+	private final AtomicLong rejectedRequestCount = new AtomicLong();
+	private final byte[] overloadedReply;
 	private final int serverPort;
 	private final IFileResolver fileResolver;
-	private final int handlerCount;
 	private final IHttpAuthHandler httpAuthHandler;
 	private final boolean useExternalFiles;
-	private ServerSocket listener = null;
-	private Thread connectionInitializationThread;
-	private boolean keepRunning = false;
+	private final byte serverEngineType;
+	private final File requestBodySpillDirectory;
+	private final EntityTagCache entityTagCache = new EntityTagCache();
+	private final CacheControlPolicy cacheControlPolicy = new CacheControlPolicy();
+	private volatile AssetManifest assetManifest;
+	private IServerEngine serverEngine;
+	private volatile boolean keepRunning = false;
 
 	/**
 	 * Creates our application server
 	 *
 	 * @param port            the port to run on
 	 * @param androidContext  the android application context
-	 * @param requestHandlers the path handlers to use
+	 * @param requestHandlers the path handlers to use, each gets every request whose path starts with its path handled
 	 * @param fileResolver    the logic to resolve files for the server
 	 * @param httpAuthHandler the logic to handle authentication
 	 */
 	public HttpApplication(int port, Context androidContext, BaseFoxyPathHandler[] requestHandlers, IFileResolver fileResolver, IHttpAuthHandler httpAuthHandler) {
-		activeHandlers = requestHandlers;
 		this.httpAuthHandler = httpAuthHandler;
 		serverPort = port;
 		this.fileResolver = fileResolver;
-		if (activeHandlers != null)
-			handlerCount = activeHandlers.length;
-		else
-			handlerCount = 0;
+		if (requestHandlers != null) {
+			for (BaseFoxyPathHandler handler : requestHandlers)
+				router.addPrefixRoute(PathRouter.ANY_VERB, handler.getPathHandled(), handler);
+		}
 		FoxyServerSettings.getInstance().setDeviceHardwareId(androidContext);
 		useExternalFiles = FoxyServerSettings.getInstance().isUsingDeviceFileSystem();
+		requestBodySpillDirectory = androidContext.getCacheDir();
+		serverEngineType = FoxyServerSettings.getInstance().getServerEngine();
+		executorService = newWorkerPool();
+		overloadedReply = String.format(OVERLOADED_REPLY_FORMAT, FoxyServerSettings.getInstance().getOverloadRetryAfterSeconds()).getBytes();
+	}
+
+	/**
+	 * Makes the bounded pool of workers requests are served on
+	 *
+	 * @return the pool
+	 */
+	private static ThreadPoolExecutor newWorkerPool() {
+		int workerThreadCount = Math.max(1, FoxyServerSettings.getInstance().getWorkerThreadCount());
+		ThreadPoolExecutor workerPool = new ThreadPoolExecutor(
+				workerThreadCount,
+				workerThreadCount,
+				WORKER_KEEP_ALIVE_SECONDS,
+				TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, FoxyServerSettings.getInstance().getWorkerQueueLimit())),
+				new WorkerThreadFactory()
+		);
+		workerPool.allowCoreThreadTimeOut(true);
+		return workerPool;
 	}
 
 	@SuppressWarnings("unused")
 	public void start() {
-		connectionInitializationThread = new Thread(this);
-		keepRunning = true;
-		connectionInitializationThread.start();
+		if (executorService.isShutdown())
+			executorService = newWorkerPool();
+		if (serverEngineType == FoxyServerSettings.SERVER_ENGINE_NIO)
+			serverEngine = new NioServerEngine(this, serverPort, FoxyServerSettings.getInstance().getNioReactorThreadCount());
+		else
+			serverEngine = new BlockingServerEngine(this, serverPort);
+		try {
+			serverEngine.start();
+			keepRunning = true;
+		} catch (IOException e) {
+			Log.e(Constants.Tag, String.format("Failed to init server for port: %s", serverPort), e);
+			keepRunning = false;
+		}
 	}
 
 	@SuppressWarnings("unused")
 	public void stop() throws InterruptedException, IOException {
 		keepRunning = false;
-		listener.close();
-		connectionInitializationThread.join();
+		if (serverEngine != null)
+			serverEngine.stop();
+		synchronized (this) {
+			if (deadlineExecutor != null) {
+				deadlineExecutor.shutdownNow();
+				deadlineExecutor = null;
+			}
+		}
+		// connections being served are let finish, idle keep-alive ones are closed once they time out
+		ThreadPoolExecutor workerPool = executorService;
+		workerPool.shutdown();
+		if (!workerPool.awaitTermination(WORKER_STOP_GRACE_SECONDS, TimeUnit.SECONDS)) {
+			for (Runnable notStarted : workerPool.shutdownNow()) {
+				if (notStarted instanceof HttpContext)
+					((HttpContext) notStarted).abandon();
+			}
+		}
 	}
 
-	@Override
-	public void run() {
+	/**
+	 * Called by the server engine to hand over a connection that is ready to be processed. A connection the NIO engine
+	 * parked between requests comes back here with the context it was served with before
+	 *
+	 * @param connection the client connection
+	 */
+	public void dispatch(IHttpConnection connection) {
+		HttpContext httpContext = connection.getHttpContext();
+		if (httpContext == null) {
+			httpContext = new HttpContext(connection, this, httpAuthHandler);
+			connection.setHttpContext(httpContext);
+		}
 		try {
-			listener = new ServerSocket(serverPort);
-		} catch (IOException e) {
-			Log.e(Constants.Tag, String.format("Failed to init server for port: %s", serverPort), e);
-			keepRunning = false;
-			return;
+			executorService.execute(httpContext);
+		} catch (RejectedExecutionException e) {
+			rejectedRequestCount.incrementAndGet();
+			sendOverloaded(connection);
 		}
-		Log.i(Constants.Tag, String.format("foxy http server up on port: %s", serverPort));
-		while (keepRunning) {
-			try {
-				Socket clientSocket = listener.accept();
-				HttpContext httpContext = new HttpContext(clientSocket, this, httpAuthHandler);
-				executorService.submit(httpContext);
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+	}
+
+	/**
+	 * Called when an async response is finished to send it and carry on with the connection on a worker. If every
+	 * worker is busy and the queue is full the connection is turned away with a 503 like a new one would be, it is
+	 * never sent on the calling thread since that may be the deadline timer or an engine thread
+	 *
+	 * @param connection   the connection the response is for
+	 * @param continuation what sends the response
+	 * @return true if a worker will run the continuation, false if the connection was turned away
+	 */
+	public boolean resume(IHttpConnection connection, Runnable continuation) {
+		try {
+			executorService.execute(continuation);
+			return true;
+		} catch (RejectedExecutionException e) {
+			rejectedRequestCount.incrementAndGet();
+			sendOverloaded(connection);
+			return false;
 		}
 	}
 
 	/**
-	 * Used to get the path handler for a given path
+	 * Used by async responses to be told when their deadline passes
+	 *
+	 * @param expire      what to run at the deadline
+	 * @param delayMillis how long from now the deadline is
+	 * @return the scheduled deadline which is cancelled if the response is finished in time
+	 */
+	public synchronized ScheduledFuture<?> scheduleDeadline(Runnable expire, long delayMillis) {
+		if (deadlineExecutor == null)
+			deadlineExecutor = new ScheduledThreadPoolExecutor(1, new DeadlineThreadFactory());
+		return deadlineExecutor.schedule(expire, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Turns a connection away with our precomputed 503 when every worker is busy and the queue is full
+	 *
+	 * @param connection the connection to turn away
+	 */
+	private void sendOverloaded(IHttpConnection connection) {
+		try {
+			OutputStream outputStream = connection.getOutputStream();
+			outputStream.write(overloadedReply);
+			outputStream.flush();
+		} catch (IOException e) {
+			// the client is gone anyway
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Used to get the path handler for a given path. Requests are routed with getRouter which does not allocate, this
+	 * is here for anything that just wants to know which handler a path goes to
 	 *
 	 * @param requestedPath the path requested
 	 * @return the handler or null
 	 */
+	@SuppressWarnings("unused")
 	public BaseFoxyPathHandler findHandlerForPath(String requestedPath) {
-		for (int i = 0; i < handlerCount; i++) {
-			if (requestedPath.startsWith(activeHandlers[i].getPathHandled())) {
-				return activeHandlers[i];
-			}
-		}
-		return null;
+		RouteMatch match = new RouteMatch();
+		router.find(PathRouter.ANY_VERB, requestedPath, match);
+		return match.getHandler();
+	}
+
+	/**
+	 * Adds a route for one verb that only matches the whole path, such as /api/users/{id}. Call this before start
+	 *
+	 * @param verb    the verb the route is for (HttpRequest.REQUEST_VERB_GET...) or PathRouter.ANY_VERB
+	 * @param pattern the path, segments may be parameters the handler reads with HttpContext.getPathParameter
+	 * @param handler the handler that gets the matching requests
+	 */
+	@SuppressWarnings("unused")
+	public void addRoute(byte verb, String pattern, BaseFoxyPathHandler handler) {
+		router.addRoute(verb, pattern, handler);
+	}
+
+	/**
+	 * Adds a table of routes, such as the ones the route processor of foxyserver-compiler writes for @Route classes.
+	 * Call this before start
+	 *
+	 * @param routeTable the routes to add
+	 */
+	@SuppressWarnings("unused")
+	public void addRoutes(IRouteTable routeTable) {
+		routeTable.register(router);
+	}
+
+	/**
+	 * @return the routes to our path handlers
+	 */
+	public PathRouter getRouter() {
+		return router;
+	}
+
+	/**
+	 * @return where request bodies too big to hold in memory are written, this is the app cache directory
+	 */
+	public File getRequestBodySpillDirectory() {
+		return requestBodySpillDirectory;
+	}
+
+	/**
+	 * Add rules to this to have responses sent with a Cache-Control (and Expires) header based on their path
+	 *
+	 * @return the caching directives table
+	 */
+	public CacheControlPolicy getCacheControlPolicy() {
+		return cacheControlPolicy;
+	}
+
+	/**
+	 * @return the manifest of the processed web root or null if there is none
+	 */
+	public AssetManifest getAssetManifest() {
+		return assetManifest;
+	}
+
+	/**
+	 * Set this to the manifest the file resolver loaded so requests for plain names are sent the fingerprinted files,
+	 * fingerprinted files are cached for good and precompressed variants are picked without looking for them
+	 *
+	 * @param assetManifest the manifest or null for none
+	 */
+	@SuppressWarnings("unused")
+	public void setAssetManifest(AssetManifest assetManifest) {
+		this.assetManifest = assetManifest;
+	}
+
+	/**
+	 * @return the ETags worked out for static files
+	 */
+	public EntityTagCache getEntityTagCache() {
+		return entityTagCache;
 	}
 
 	/**
@@ -135,10 +330,73 @@ public class HttpApplication implements Runnable {
 		return useExternalFiles;
 	}
 
+	/**
+	 * @return the engine type in use (FoxyServerSettings.SERVER_ENGINE_BLOCKING or FoxyServerSettings.SERVER_ENGINE_NIO)
+	 */
+	@SuppressWarnings("unused")
+	public byte getServerEngineType() {
+		return serverEngineType;
+	}
+
+	/**
+	 * @return how many connections are waiting for a free worker right now
+	 */
+	@SuppressWarnings("unused")
+	public int getWorkerQueueDepth() {
+		return executorService.getQueue().size();
+	}
+
+	/**
+	 * @return how many workers are running a request right now
+	 */
+	@SuppressWarnings("unused")
+	public int getActiveWorkerCount() {
+		return executorService.getActiveCount();
+	}
+
+	/**
+	 * @return how many connections have been turned away with a 503 since the server was created
+	 */
+	@SuppressWarnings("unused")
+	public long getRejectedRequestCount() {
+		return rejectedRequestCount.get();
+	}
+
+	/**
+	 * @return true if connections are waiting on a worker. Used to stop holding workers with idle keep-alive connections
+	 */
+	public boolean hasQueuedWork() {
+		return !executorService.getQueue().isEmpty();
+	}
+
 	/**
 	 * @return true if the server is running
 	 */
 	public boolean isRunning() {
 		return keepRunning;
 	}
+
+	/**
+	 * Names our worker threads so they are easy to spot in a thread dump
+	 */
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private final AtomicInteger threadIndex = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			return new Thread(runnable, String.format("foxy-worker-%s", threadIndex.incrementAndGet()));
+		}
+	}
+
+	/**
+	 * The deadline thread only waits on timers so it should not keep the process alive
+	 */
+	private static class DeadlineThreadFactory implements ThreadFactory {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "foxy-async-deadline");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers paths that were looked for and not found so asking again does not have to touch the file system. Bots
+ * and stale bookmarks ask for the same missing paths over and over. Only so many paths are kept, the oldest are
+ * dropped first, and each one is only trusted for a while so a file that shows up later is found even if nobody
+ * said it changed
+ */
+public class MissingFileCache {
+
+	private final int maxEntries;
+	private final long lifetimeMillis;
+	// path to when we stop trusting that it is missing, oldest first
+	private final LinkedHashMap<String, Long> missingFiles = new LinkedHashMap<>();
+	private final AtomicLong hitCount = new AtomicLong();
+
+	/**
+	 * Creates our cache
+	 *
+	 * @param maxEntries     how many missing paths to remember
+	 * @param lifetimeMillis how long a path is remembered as missing
+	 */
+	public MissingFileCache(int maxEntries, long lifetimeMillis) {
+		this.maxEntries = maxEntries;
+		this.lifetimeMillis = lifetimeMillis;
+	}
+
+	/**
+	 * @param file the file with path info
+	 * @return true if the file was missing the last time it was looked for
+	 */
+	public boolean isMissing(String file) {
+		synchronized (missingFiles) {
+			Long expiresAt = missingFiles.get(file);
+			if (expiresAt == null)
+				return false;
+			if (expiresAt < System.currentTimeMillis()) {
+				missingFiles.remove(file);
+				return false;
+			}
+		}
+		hitCount.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * @param file the file with path info that was looked for and not found
+	 */
+	public void add(String file) {
+		if (maxEntries <= 0)
+			return;
+		synchronized (missingFiles) {
+			// put it at the back so it is dropped last
+			missingFiles.remove(file);
+			missingFiles.put(file, System.currentTimeMillis() + lifetimeMillis);
+			Iterator<Map.Entry<String, Long>> entries = missingFiles.entrySet().iterator();
+			while (missingFiles.size() > maxEntries && entries.hasNext()) {
+				entries.next();
+				entries.remove();
+			}
+		}
+	}
+
+	/**
+	 * Forgets every missing path, call this when files may have been added
+	 */
+	public void clear() {
+		synchronized (missingFiles) {
+			missingFiles.clear();
+		}
+	}
+
+	/**
+	 * @return how many lookups were answered without touching the file system
+	 */
+	@SuppressWarnings("unused")
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return how many missing paths are remembered right now
+	 */
+	@SuppressWarnings("unused")
+	public int size() {
+		synchronized (missingFiles) {
+			return missingFiles.size();
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * This is how web root files are walked and hashed, both on the device and by the build, so an index, a pack and a
+ * fingerprinted name all agree on what a file's hash is. It is plain java so the build can use it
+ */
+public class WebRootFiles {
+
+	private static final String HASH_ALGORITHM = "SHA-1";
+	// 16 bytes of the hash is plenty to tell versions of a file apart
+	public static final int HASH_BYTES = 16;
+	private static final int READ_BUFFER_SIZE = 8192;
+
+	private WebRootFiles() {
+	}
+
+	/**
+	 * Walks a directory and adds every file under it
+	 *
+	 * @param root      the web root
+	 * @param directory the directory to walk with path info, "" for the root itself
+	 * @param files     where the files are added with path info ie /css/site.css
+	 */
+	public static void list(File root, String directory, List<String> files) {
+		File[] children = new File(root, directory).listFiles();
+		if (children == null)
+			return;
+		for (File child : children) {
+			String path = directory + '/' + child.getName();
+			if (child.isDirectory())
+				list(root, path, files);
+			else if (child.isFile())
+				files.add(path);
+		}
+	}
+
+	/**
+	 * @return a digest to feed content to, finish it with {@link #hash(MessageDigest)}
+	 * @throws IOException if the platform has no SHA-1
+	 */
+	public static MessageDigest newDigest() throws IOException {
+		try {
+			return MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * @param digest a digest from {@link #newDigest()} that has been fed the content
+	 * @return the first {@link #HASH_BYTES} bytes of the hash
+	 */
+	public static byte[] hash(MessageDigest digest) {
+		byte[] hash = new byte[HASH_BYTES];
+		System.arraycopy(digest.digest(), 0, hash, 0, HASH_BYTES);
+		return hash;
+	}
+
+	/**
+	 * @param content the content of a file
+	 * @return the first {@link #HASH_BYTES} bytes of the hash of the content
+	 * @throws IOException if the platform has no SHA-1
+	 */
+	public static byte[] hash(byte[] content) throws IOException {
+		MessageDigest digest = newDigest();
+		digest.update(content);
+		return hash(digest);
+	}
+
+	/**
+	 * Reads a stream to the end and hashes it, the stream is left open
+	 *
+	 * @param in the content of a file
+	 * @return the first {@link #HASH_BYTES} bytes of the hash of the content
+	 * @throws IOException
+	 */
+	public static byte[] hash(InputStream in) throws IOException {
+		MessageDigest digest = newDigest();
+		byte[] buffer = new byte[READ_BUFFER_SIZE];
+		int count;
+		while ((count = in.read(buffer)) != -1)
+			digest.update(buffer, 0, count);
+		return hash(digest);
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting.engine;
+
+import android.util.Log;
+
+import com.foxhorn.foxyserver.Constants;
+import com.foxhorn.foxyserver.FoxyServerSettings;
+import com.foxhorn.foxyserver.web.api.IServerEngine;
+import com.foxhorn.foxyserver.web.hosting.HttpApplication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * This is the classic engine. One thread blocks on accept and every connection is handed to the worker pool
+ * where it holds a thread for as long as it is open. The listener is a channel left in blocking mode so every
+ * connection sits on a socket channel and files can be sent to it with transferTo
+ */
+public class BlockingServerEngine implements IServerEngine, Runnable {
+
+	private final HttpApplication httpApplication;
+	private final int serverPort;
+	private ServerSocketChannel listener;
+	private Thread acceptThread;
+	private volatile boolean keepRunning;
+
+	/**
+	 * Creates our engine
+	 *
+	 * @param httpApplication the application connections are handed to
+	 * @param port            the port to listen on
+	 */
+	public BlockingServerEngine(HttpApplication httpApplication, int port) {
+		this.httpApplication = httpApplication;
+		serverPort = port;
+	}
+
+	@Override
+	public void start() throws IOException {
+		listener = ServerSocketChannel.open();
+		listener.socket().setReuseAddress(true);
+		listener.socket().bind(new InetSocketAddress(serverPort));
+		keepRunning = true;
+		acceptThread = new Thread(this, "foxy-accept");
+		acceptThread.start();
+		Log.i(Constants.Tag, String.format("foxy http server up on port: %s", serverPort));
+	}
+
+	@Override
+	public void stop() throws IOException, InterruptedException {
+		keepRunning = false;
+		if (listener != null)
+			listener.close();
+		if (acceptThread != null)
+			acceptThread.join();
+	}
+
+	@Override
+	public void run() {
+		int readTimeoutMillis = FoxyServerSettings.getInstance().getKeepAliveTimeoutSeconds() * 1000;
+		while (keepRunning) {
+			try {
+				SocketChannel clientChannel = listener.accept();
+				// reads go through the socket streams which still time out with SO_TIMEOUT in blocking mode
+				httpApplication.dispatch(new SocketHttpConnection(clientChannel.socket(), readTimeoutMillis));
+			} catch (IOException e) {
+				if (keepRunning)
+					e.printStackTrace();
+			}
+		}
+	}
+}
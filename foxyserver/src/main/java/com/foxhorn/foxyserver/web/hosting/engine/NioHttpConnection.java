@@ -0,0 +1,452 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting.engine;
+
+import com.foxhorn.foxyserver.web.HttpContext;
+import com.foxhorn.foxyserver.web.api.IHttpConnection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This is a connection that is owned by a NioReactor. The reactor does all of the non-blocking reads and writes on
+ * the channel, the worker thread that runs the HttpContext only ever sees the blocking looking streams this exposes.
+ * A connection is only handed to a worker once a complete request head has been buffered so slow or idle clients
+ * never hold a worker thread.
+ */
+public class NioHttpConnection implements IHttpConnection {
+
+	private static final int INITIAL_INBOUND_SIZE = 4096;
+	// once this much is waiting to be consumed by the worker we stop reading from the socket
+	private static final int MAX_BUFFERED_INBOUND = 64 * 1024;
+	// once this much is waiting to go out the worker blocks till the reactor drains it
+	private static final int MAX_PENDING_OUTBOUND = 64 * 1024;
+
+	private final SocketChannel channel;
+	private final NioReactor reactor;
+	private final String remoteAddress;
+	private final int readTimeoutMillis;
+	private final Object lock = new Object();
+	private final AtomicBoolean interestUpdatePending = new AtomicBoolean();
+	private final InputStream inputStream = new ReactorInputStream();
+	private final OutputStream outputStream = new ReactorOutputStream();
+	// holds ByteBuffers and FileRegions in the order they must go out
+	private final ArrayDeque<Object> outbound = new ArrayDeque<>();
+	private SelectionKey selectionKey;
+	private byte[] inbound = new byte[INITIAL_INBOUND_SIZE];
+	private int inboundStart;
+	private int inboundEnd;
+	private int headScanIndex;
+	private long pendingOutbound;
+	private int requestCount;
+	// handed from the dispatching thread to a worker through the pool which makes it visible there
+	private HttpContext httpContext;
+	private long idleDeadline;
+	private boolean endOfInput;
+	private boolean closeRequested;
+	private boolean closed;
+	private boolean dispatched;
+
+	NioHttpConnection(SocketChannel channel, NioReactor reactor, int idleTimeoutMillis) {
+		this.channel = channel;
+		this.reactor = reactor;
+		remoteAddress = channel.socket().getInetAddress().getHostAddress();
+		readTimeoutMillis = idleTimeoutMillis;
+		idleDeadline = System.currentTimeMillis() + idleTimeoutMillis;
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	@Override
+	public String getRemoteAddress() {
+		return remoteAddress;
+	}
+
+	@Override
+	public int incrementRequestCount() {
+		return ++requestCount;
+	}
+
+	@Override
+	public HttpContext getHttpContext() {
+		return httpContext;
+	}
+
+	@Override
+	public void setHttpContext(HttpContext httpContext) {
+		this.httpContext = httpContext;
+	}
+
+	/**
+	 * Never blocks. If the client already sent its next request the caller keeps going with it, otherwise the
+	 * connection is parked with the reactor which hands it to a worker again once the next request head arrives
+	 *
+	 * @param idleTimeoutMillis how long the client may take to start its next request
+	 * @return true if the next request head is already buffered
+	 */
+	@Override
+	public boolean awaitNextRequest(int idleTimeoutMillis) {
+		synchronized (lock) {
+			if (closed || closeRequested)
+				return false;
+			if (hasCompleteRequestHead())
+				return true;
+			if (endOfInput) {
+				closeRequested = true;
+			} else {
+				dispatched = false;
+				idleDeadline = System.currentTimeMillis() + idleTimeoutMillis;
+			}
+		}
+		reactor.updateInterest(this);
+		return false;
+	}
+
+	/**
+	 * Queues a file region to be sent by the reactor straight from the file to the socket with transferTo so the
+	 * bytes never pass through the java heap. This only blocks if too much is already waiting to be sent
+	 *
+	 * @param source   the file to send from, the connection closes it once the region is sent
+	 * @param position where in the file to start
+	 * @param count    how many bytes to send
+	 * @throws IOException if the connection is closed
+	 */
+	@Override
+	public void transferFrom(FileChannel source, long position, long count) throws IOException {
+		try {
+			enqueue(new FileRegion(source, position, count), count);
+		} catch (IOException e) {
+			source.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Queues the buffer itself for the reactor to write, nothing is copied. This only blocks if too much is already
+	 * waiting to be sent
+	 *
+	 * @param source the bytes to send, it must not be changed after
+	 * @throws IOException if the connection is closed
+	 */
+	@Override
+	public void write(ByteBuffer source) throws IOException {
+		if (source.hasRemaining())
+			enqueue(source, source.remaining());
+	}
+
+	/**
+	 * Marks the connection to be closed. The reactor does the actual close once everything queued has been written
+	 */
+	@Override
+	public void close() {
+		synchronized (lock) {
+			closeRequested = true;
+			lock.notifyAll();
+		}
+		reactor.updateInterest(this);
+	}
+
+	//<editor-fold desc="reactor thread only">
+	void setSelectionKey(SelectionKey selectionKey) {
+		this.selectionKey = selectionKey;
+	}
+
+	/**
+	 * Called by the reactor when the channel is readable
+	 *
+	 * @param readBuffer the reactors shared read buffer
+	 * @return true if this connection now holds a complete request head and should be handed to a worker
+	 * @throws IOException
+	 */
+	boolean onReadable(ByteBuffer readBuffer) throws IOException {
+		readBuffer.clear();
+		int count = channel.read(readBuffer);
+		synchronized (lock) {
+			if (count < 0) {
+				endOfInput = true;
+				lock.notifyAll();
+				if (!dispatched)
+					closeRequested = true;
+				return false;
+			}
+			readBuffer.flip();
+			ensureInboundCapacity(count);
+			readBuffer.get(inbound, inboundEnd, count);
+			inboundEnd += count;
+			lock.notifyAll();
+			if (!dispatched && hasCompleteRequestHead()) {
+				dispatched = true;
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Called by the reactor when the channel is writable
+	 *
+	 * @throws IOException
+	 */
+	void onWritable() throws IOException {
+		synchronized (lock) {
+			while (!outbound.isEmpty()) {
+				Object pending = outbound.peek();
+				if (pending instanceof FileRegion) {
+					FileRegion region = (FileRegion) pending;
+					long written = region.source.transferTo(region.position, region.remaining, channel);
+					if (written == 0 && region.position >= region.source.size())
+						throw new IOException("file was truncated while it was being sent");
+					region.position += written;
+					region.remaining -= written;
+					pendingOutbound -= written;
+					if (region.remaining > 0)
+						break;
+					region.close();
+				} else {
+					ByteBuffer buffer = (ByteBuffer) pending;
+					int written = channel.write(buffer);
+					pendingOutbound -= written;
+					if (buffer.hasRemaining())
+						break;
+				}
+				outbound.poll();
+			}
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * @param now the current time in millis
+	 * @return true if this connection is waiting on the client and has been doing so for too long
+	 */
+	boolean isIdleExpired(long now) {
+		synchronized (lock) {
+			return !dispatched && now > idleDeadline;
+		}
+	}
+
+	/**
+	 * Brings the selection key in line with what this connection currently needs, or closes it if it is done
+	 */
+	void applyInterest() {
+		interestUpdatePending.set(false);
+		int ops = 0;
+		boolean shouldClose;
+		synchronized (lock) {
+			shouldClose = closed || closeRequested && outbound.isEmpty();
+			if (!closeRequested && !endOfInput && inboundEnd - inboundStart < MAX_BUFFERED_INBOUND)
+				ops |= SelectionKey.OP_READ;
+			if (!outbound.isEmpty())
+				ops |= SelectionKey.OP_WRITE;
+		}
+		if (shouldClose) {
+			closeNow();
+		} else if (selectionKey != null && selectionKey.isValid()) {
+			selectionKey.interestOps(ops);
+		}
+	}
+
+	/**
+	 * Closes the channel right now dropping anything that has not been sent
+	 */
+	void closeNow() {
+		synchronized (lock) {
+			if (closed)
+				return;
+			closed = true;
+			closeRequested = true;
+			for (Object pending : outbound) {
+				if (pending instanceof FileRegion)
+					((FileRegion) pending).close();
+			}
+			outbound.clear();
+			pendingOutbound = 0;
+			lock.notifyAll();
+		}
+		if (selectionKey != null)
+			selectionKey.cancel();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	//</editor-fold>
+
+	boolean markInterestUpdatePending() {
+		return interestUpdatePending.compareAndSet(false, true);
+	}
+
+	/**
+	 * Queues something for the reactor to write, blocking while too much is already waiting
+	 *
+	 * @param pending a ByteBuffer or FileRegion
+	 * @param length  how many bytes it will put on the wire
+	 * @throws IOException if the connection is closed
+	 */
+	private void enqueue(Object pending, long length) throws IOException {
+		synchronized (lock) {
+			while (pendingOutbound >= MAX_PENDING_OUTBOUND && !closed) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+			}
+			if (closed)
+				throw new IOException("connection closed");
+			outbound.add(pending);
+			pendingOutbound += length;
+		}
+		reactor.updateInterest(this);
+	}
+
+	private boolean hasCompleteRequestHead() {
+		int start = Math.max(inboundStart, headScanIndex);
+		for (int i = start; i + 3 < inboundEnd; i++) {
+			if (inbound[i] == '\r' && inbound[i + 1] == '\n' && inbound[i + 2] == '\r' && inbound[i + 3] == '\n')
+				return true;
+		}
+		// no need to look at these bytes again next time around
+		headScanIndex = Math.max(start, inboundEnd - 3);
+		return false;
+	}
+
+	private void ensureInboundCapacity(int needed) {
+		if (inboundEnd + needed <= inbound.length)
+			return;
+		int buffered = inboundEnd - inboundStart;
+		byte[] target = buffered + needed <= inbound.length ? inbound : new byte[Math.max(inbound.length * 2, buffered + needed)];
+		System.arraycopy(inbound, inboundStart, target, 0, buffered);
+		headScanIndex = Math.max(0, headScanIndex - inboundStart);
+		inbound = target;
+		inboundStart = 0;
+		inboundEnd = buffered;
+	}
+
+	/**
+	 * Worker side view of the bytes the reactor has read
+	 */
+	private class ReactorInputStream extends InputStream {
+
+		@Override
+		public int read() throws IOException {
+			byte[] single = new byte[1];
+			return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (length == 0)
+				return 0;
+			int count;
+			boolean wasPaused;
+			synchronized (lock) {
+				// like SO_TIMEOUT on a blocking socket, a worker never waits forever on a client that went quiet
+				long deadline = System.currentTimeMillis() + readTimeoutMillis;
+				while (inboundEnd == inboundStart && !endOfInput && !closed) {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0)
+						throw new SocketTimeoutException("timed out waiting for the client to send more");
+					try {
+						lock.wait(remaining);
+					} catch (InterruptedException e) {
+						throw new InterruptedIOException();
+					}
+				}
+				if (inboundEnd == inboundStart)
+					return -1;
+				wasPaused = inboundEnd - inboundStart >= MAX_BUFFERED_INBOUND;
+				count = Math.min(length, inboundEnd - inboundStart);
+				System.arraycopy(inbound, inboundStart, buffer, offset, count);
+				inboundStart += count;
+			}
+			if (wasPaused)
+				reactor.updateInterest(NioHttpConnection.this);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			synchronized (lock) {
+				return inboundEnd - inboundStart;
+			}
+		}
+	}
+
+	/**
+	 * Worker side stream that queues bytes for the reactor to write
+	 */
+	private class ReactorOutputStream extends OutputStream {
+
+		@Override
+		public void write(int oneByte) throws IOException {
+			write(new byte[]{(byte) oneByte}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] buffer, int offset, int length) throws IOException {
+			if (length == 0)
+				return;
+			byte[] copy = new byte[length];
+			System.arraycopy(buffer, offset, copy, 0, length);
+			enqueue(ByteBuffer.wrap(copy), length);
+		}
+	}
+
+	/**
+	 * A part of a file waiting to be sent with transferTo
+	 */
+	private static class FileRegion {
+		private final FileChannel source;
+		private long position;
+		private long remaining;
+
+		FileRegion(FileChannel source, long position, long count) {
+			this.source = source;
+			this.position = position;
+			remaining = count;
+		}
+
+		void close() {
+			try {
+				source.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
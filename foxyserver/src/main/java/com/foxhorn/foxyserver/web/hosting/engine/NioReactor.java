@@ -0,0 +1,220 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting.engine;
+
+import android.util.Log;
+
+import com.foxhorn.foxyserver.Constants;
+import com.foxhorn.foxyserver.FoxyServerSettings;
+import com.foxhorn.foxyserver.web.hosting.HttpApplication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single selector thread. It does the non-blocking accept (if it owns the server channel), read and write for
+ * every connection registered with it and hands connections holding a complete request head to the worker pool
+ */
+public class NioReactor implements Runnable {
+
+	private static final int READ_BUFFER_SIZE = 16 * 1024;
+	private static final long IDLE_SWEEP_INTERVAL_MILLIS = 1000;
+
+	private final HttpApplication httpApplication;
+	private final NioServerEngine serverEngine;
+	private final Selector selector;
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+	private final ConcurrentLinkedQueue<SocketChannel> pendingRegistrations = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<NioHttpConnection> pendingInterestUpdates = new ConcurrentLinkedQueue<>();
+	private final int idleTimeoutMillis;
+	private long lastIdleSweep;
+	private Thread reactorThread;
+	private volatile boolean keepRunning;
+
+	/**
+	 * Creates our reactor
+	 *
+	 * @param httpApplication the application that complete requests are dispatched to
+	 * @param serverEngine    the engine that owns this reactor
+	 * @throws IOException if the selector could not be opened
+	 */
+	NioReactor(HttpApplication httpApplication, NioServerEngine serverEngine) throws IOException {
+		this.httpApplication = httpApplication;
+		this.serverEngine = serverEngine;
+		selector = Selector.open();
+		idleTimeoutMillis = FoxyServerSettings.getInstance().getKeepAliveTimeoutSeconds() * 1000;
+	}
+
+	/**
+	 * Used to have this reactor also accept new connections
+	 *
+	 * @param serverChannel the non-blocking server channel
+	 * @throws ClosedChannelException
+	 */
+	void acceptOn(ServerSocketChannel serverChannel) throws ClosedChannelException {
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	void start(String name) {
+		keepRunning = true;
+		reactorThread = new Thread(this, name);
+		reactorThread.start();
+	}
+
+	void stop() throws InterruptedException {
+		keepRunning = false;
+		selector.wakeup();
+		if (reactorThread != null)
+			reactorThread.join();
+	}
+
+	/**
+	 * Used to hand a freshly accepted channel to this reactor. Safe to call from any thread
+	 *
+	 * @param channel the accepted channel
+	 */
+	void register(SocketChannel channel) {
+		pendingRegistrations.add(channel);
+		selector.wakeup();
+	}
+
+	/**
+	 * Used by connections to ask the reactor to re-evaluate what they are interested in. Safe to call from any thread
+	 *
+	 * @param connection the connection that changed
+	 */
+	void updateInterest(NioHttpConnection connection) {
+		if (!connection.markInterestUpdatePending())
+			return;
+		pendingInterestUpdates.add(connection);
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		while (keepRunning) {
+			try {
+				selector.select(IDLE_SWEEP_INTERVAL_MILLIS);
+				runPendingRegistrations();
+				runPendingInterestUpdates();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid())
+						continue;
+					if (key.isAcceptable()) {
+						acceptConnections((ServerSocketChannel) key.channel());
+					} else {
+						processConnection(key, (NioHttpConnection) key.attachment());
+					}
+				}
+				closeIdleConnections();
+			} catch (IOException e) {
+				Log.e(Constants.Tag, "nio reactor failed to select", e);
+			}
+		}
+		closeAll();
+	}
+
+	private void acceptConnections(ServerSocketChannel serverChannel) {
+		SocketChannel channel;
+		try {
+			while ((channel = serverChannel.accept()) != null) {
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				serverEngine.nextReactor().register(channel);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void processConnection(SelectionKey key, NioHttpConnection connection) {
+		try {
+			if (key.isWritable())
+				connection.onWritable();
+			if (key.isValid() && key.isReadable() && connection.onReadable(readBuffer))
+				httpApplication.dispatch(connection);
+			connection.applyInterest();
+		} catch (IOException | CancelledKeyException e) {
+			connection.closeNow();
+		}
+	}
+
+	private void runPendingRegistrations() {
+		SocketChannel channel;
+		while ((channel = pendingRegistrations.poll()) != null) {
+			NioHttpConnection connection = new NioHttpConnection(channel, this, idleTimeoutMillis);
+			try {
+				connection.setSelectionKey(channel.register(selector, SelectionKey.OP_READ, connection));
+			} catch (ClosedChannelException e) {
+				connection.closeNow();
+			}
+		}
+	}
+
+	private void runPendingInterestUpdates() {
+		NioHttpConnection connection;
+		while ((connection = pendingInterestUpdates.poll()) != null) {
+			try {
+				connection.applyInterest();
+			} catch (CancelledKeyException e) {
+				connection.closeNow();
+			}
+		}
+	}
+
+	/**
+	 * Closes connections that are parked waiting on a request that never came
+	 */
+	private void closeIdleConnections() {
+		long now = System.currentTimeMillis();
+		if (now - lastIdleSweep < IDLE_SWEEP_INTERVAL_MILLIS)
+			return;
+		lastIdleSweep = now;
+		for (SelectionKey key : selector.keys()) {
+			if (key.attachment() instanceof NioHttpConnection) {
+				NioHttpConnection connection = (NioHttpConnection) key.attachment();
+				if (connection.isIdleExpired(now))
+					connection.closeNow();
+			}
+		}
+	}
+
+	private void closeAll() {
+		for (SelectionKey key : selector.keys()) {
+			if (key.attachment() instanceof NioHttpConnection)
+				((NioHttpConnection) key.attachment()).closeNow();
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
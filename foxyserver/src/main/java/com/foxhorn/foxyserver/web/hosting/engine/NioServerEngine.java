@@ -0,0 +1,93 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting.engine;
+
+import android.util.Log;
+
+import com.foxhorn.foxyserver.Constants;
+import com.foxhorn.foxyserver.web.api.IServerEngine;
+import com.foxhorn.foxyserver.web.hosting.HttpApplication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is the selector based engine. A small fixed number of reactor threads do all socket io without blocking and
+ * the worker pool only ever sees connections that have a complete request ready to go. The first reactor also
+ * accepts new connections and spreads them across all reactors.
+ */
+public class NioServerEngine implements IServerEngine {
+
+	private final HttpApplication httpApplication;
+	private final int serverPort;
+	private final int reactorCount;
+	private final AtomicInteger nextReactorIndex = new AtomicInteger();
+	private ServerSocketChannel serverChannel;
+	private NioReactor[] reactors;
+
+	/**
+	 * Creates our engine
+	 *
+	 * @param httpApplication the application connections are handed to
+	 * @param port            the port to listen on
+	 * @param reactorCount    how many selector threads to run (1 is plenty for most devices)
+	 */
+	public NioServerEngine(HttpApplication httpApplication, int port, int reactorCount) {
+		this.httpApplication = httpApplication;
+		serverPort = port;
+		this.reactorCount = Math.max(1, reactorCount);
+	}
+
+	@Override
+	public void start() throws IOException {
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.configureBlocking(false);
+		serverChannel.socket().setReuseAddress(true);
+		serverChannel.socket().bind(new InetSocketAddress(serverPort));
+		reactors = new NioReactor[reactorCount];
+		for (int i = 0; i < reactorCount; i++) {
+			reactors[i] = new NioReactor(httpApplication, this);
+		}
+		reactors[0].acceptOn(serverChannel);
+		for (int i = 0; i < reactorCount; i++) {
+			reactors[i].start(String.format("foxy-reactor-%s", i));
+		}
+		Log.i(Constants.Tag, String.format("foxy http server (nio, %s reactors) up on port: %s", reactorCount, serverPort));
+	}
+
+	@Override
+	public void stop() throws IOException, InterruptedException {
+		if (serverChannel != null)
+			serverChannel.close();
+		if (reactors == null)
+			return;
+		for (NioReactor reactor : reactors) {
+			reactor.stop();
+		}
+	}
+
+	/**
+	 * @return the reactor the next accepted connection should be registered with
+	 */
+	NioReactor nextReactor() {
+		return reactors[(nextReactorIndex.getAndIncrement() & Integer.MAX_VALUE) % reactors.length];
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting.engine;
+
+import com.foxhorn.foxyserver.web.HttpContext;
+import com.foxhorn.foxyserver.web.api.IHttpConnection;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * This is a connection backed by a plain blocking socket. It is what the blocking engine hands out
+ */
+public class SocketHttpConnection implements IHttpConnection {
+
+	private static final int COPY_BUFFER_SIZE = 8192;
+
+	private final Socket socket;
+	private BufferedInputStream inputStream;
+	// only used for sockets that are not on a channel, kept for every file sent on the connection
+	private byte[] copyBuffer;
+	private int requestCount;
+	// handed from the dispatching thread to a worker through the pool which makes it visible there
+	private HttpContext httpContext;
+
+	/**
+	 * Creates our connection
+	 *
+	 * @param socket            the accepted client socket
+	 * @param readTimeoutMillis how long a read may block before the client is considered gone
+	 */
+	public SocketHttpConnection(Socket socket, int readTimeoutMillis) {
+		this.socket = socket;
+		try {
+			socket.setSoTimeout(readTimeoutMillis);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		if (inputStream == null)
+			inputStream = new BufferedInputStream(socket.getInputStream());
+		return inputStream;
+	}
+
+	@Override
+	public OutputStream getOutputStream() throws IOException {
+		return socket.getOutputStream();
+	}
+
+	/**
+	 * Sends part of a file. If the socket came from a channel, as it does from the blocking engine, the kernel copies
+	 * the file straight to it, otherwise the bytes are copied through a buffer to the socket stream
+	 *
+	 * @param source   the file to send from, it is closed once sent
+	 * @param position where in the file to start
+	 * @param count    how many bytes to send
+	 * @throws IOException
+	 */
+	@Override
+	public void transferFrom(FileChannel source, long position, long count) throws IOException {
+		try {
+			SocketChannel channel = socket.getChannel();
+			if (channel != null) {
+				while (count > 0) {
+					long written = source.transferTo(position, count, channel);
+					if (written == 0 && position >= source.size())
+						throw new IOException("file was truncated while it was being sent");
+					position += written;
+					count -= written;
+				}
+				return;
+			}
+			OutputStream out = getOutputStream();
+			if (copyBuffer == null)
+				copyBuffer = new byte[COPY_BUFFER_SIZE];
+			ByteBuffer buffer = ByteBuffer.wrap(copyBuffer);
+			while (count > 0) {
+				buffer.clear();
+				if (count < buffer.capacity())
+					buffer.limit((int) count);
+				int read = source.read(buffer, position);
+				if (read == -1)
+					throw new IOException("file was truncated while it was being sent");
+				out.write(copyBuffer, 0, read);
+				position += read;
+				count -= read;
+			}
+		} finally {
+			source.close();
+		}
+	}
+
+	/**
+	 * Writes a buffer straight to the socket channel, a socket that is not on a channel has it copied through a buffer
+	 * to the socket stream
+	 *
+	 * @param source the bytes to send
+	 * @throws IOException
+	 */
+	@Override
+	public void write(ByteBuffer source) throws IOException {
+		SocketChannel channel = socket.getChannel();
+		if (channel != null) {
+			while (source.hasRemaining())
+				channel.write(source);
+			return;
+		}
+		OutputStream out = getOutputStream();
+		if (copyBuffer == null)
+			copyBuffer = new byte[COPY_BUFFER_SIZE];
+		while (source.hasRemaining()) {
+			int count = Math.min(copyBuffer.length, source.remaining());
+			source.get(copyBuffer, 0, count);
+			out.write(copyBuffer, 0, count);
+		}
+	}
+
+	@Override
+	public String getRemoteAddress() {
+		return socket.getInetAddress().getHostAddress();
+	}
+
+	@Override
+	public int incrementRequestCount() {
+		return ++requestCount;
+	}
+
+	@Override
+	public HttpContext getHttpContext() {
+		return httpContext;
+	}
+
+	@Override
+	public void setHttpContext(HttpContext httpContext) {
+		this.httpContext = httpContext;
+	}
+
+	/**
+	 * Blocks the calling thread till the client starts its next request or the idle timeout passes
+	 *
+	 * @param idleTimeoutMillis how long the client may take to start its next request
+	 * @return true if the next request has started arriving, false if the connection was closed
+	 */
+	@Override
+	public boolean awaitNextRequest(int idleTimeoutMillis) {
+		try {
+			InputStream in = getInputStream();
+			socket.setSoTimeout(idleTimeoutMillis);
+			in.mark(1);
+			if (in.read() != -1) {
+				in.reset();
+				return true;
+			}
+		} catch (SocketTimeoutException e) {
+			// idle for too long
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		close();
+		return false;
+	}
+
+	@Override
+	public void close() {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting.handlers;
+
+import com.foxhorn.foxyserver.FoxyServerSettings;
+import com.foxhorn.foxyserver.web.AsyncResponse;
+import com.foxhorn.foxyserver.web.HttpContext;
+
+/**
+ * This is the base class for path handlers that answer later. Start the slow work, return straight away and complete
+ * the async response from whatever thread the work finishes on, the worker is free for other requests in between. A
+ * small pool of workers can then have many slow requests in flight
+ */
+@SuppressWarnings("unused")
+public abstract class BaseAsyncPathHandler extends BaseFoxyPathHandler {
+
+	/**
+	 * ctor
+	 *
+	 * @param pathHandled the path that a request must start with to get to this path handler
+	 */
+	protected BaseAsyncPathHandler(String pathHandled) {
+		super(pathHandled);
+	}
+
+	/**
+	 * Starts the async response and hands it to onRequestAsync, anything it throws fails the response
+	 *
+	 * @param context the context of the request
+	 * @param action  the name of the action requested
+	 */
+	@Override
+	public final void onRequest(HttpContext context, String action) {
+		AsyncResponse asyncResponse = context.startAsync(getTimeoutMillis(context, action));
+		try {
+			onRequestAsync(context, action, asyncResponse);
+		} catch (Exception e) {
+			e.printStackTrace();
+			asyncResponse.fail(e);
+		}
+	}
+
+	/**
+	 * This is called to process a request on classes that inherit from this, fill in asyncResponse.getResponse and
+	 * call complete when the answer is ready
+	 *
+	 * @param context       the context of the request
+	 * @param action        the name of the action requested
+	 * @param asyncResponse what to finish the response with
+	 */
+	public abstract void onRequestAsync(HttpContext context, String action, AsyncResponse asyncResponse);
+
+	/**
+	 * Override this to give some actions more or less time
+	 *
+	 * @param context the context of the request
+	 * @param action  the name of the action requested
+	 * @return how long in millis the response has to be completed in
+	 */
+	protected long getTimeoutMillis(HttpContext context, String action) {
+		return FoxyServerSettings.getInstance().getAsyncRequestTimeoutMillis();
+	}
+}
@@ -19,8 +19,8 @@
 package com.foxhorn.foxyserver.web.hosting.handlers;
 
 
-import com.foxhorn.foxyserver.text.StringUtils;
 import com.foxhorn.foxyserver.web.HttpContext;
+import com.foxhorn.foxyserver.web.PathSegments;
 import com.foxhorn.foxyserver.web.api.IAuthCredentialsProvider;
 
 /**
@@ -56,6 +56,8 @@ public abstract class BaseAuthenticationPathHandler extends BaseFoxyPathHandler
 	protected static final String ACTION_LOG_OFF = "log-off";
 	protected static final String ACTION_LOCK_USER = "lock-user";
 	protected static final String ACTION_UNLOCK_USER = "unlock-user";
+	private static final String[] ACTIONS = {ACTION_MANAGE, ACTION_LOG_ON, ACTION_LOG_OFF, ACTION_LOCK_USER, ACTION_UNLOCK_USER};
+	private static final String[] ENTITY_ACTIONS = {ACTION_LIST, ACTION_MODIFY, ACTION_CREATE, ACTION_REMOVE};
 	private final IAuthCredentialsProvider authCredentialsProvider;
 
 	@SuppressWarnings("unused")
@@ -72,41 +74,42 @@ public abstract class BaseAuthenticationPathHandler extends BaseFoxyPathHandler
 	 */
 	@Override
 	protected void setPermissions(HttpContext context, String action) {
-		//noinspection unused
-		String entityAction = context.getPathPart(ENTITY_ACTION_INDEX);
-		String entityName = context.getPathPart(ENTITY_NAME_INDEX);
+		PathSegments segments = context.getPathSegments();
 		if (action.equals(ACTION_MANAGE)) {
-			if (entityName.equals(ENTITY_USER_NAME)) {
+			if (segments.segmentEquals(ENTITY_NAME_INDEX, ENTITY_USER_NAME)) {
 				context.getRequest().addPermissionRequirement(PERMISSION_MANAGE_USER);
-			} else if (entityName.equals(ENTITY_ROLE_NAME)) {
+			} else if (segments.segmentEquals(ENTITY_NAME_INDEX, ENTITY_ROLE_NAME)) {
 				context.getRequest().addPermissionRequirement(PERMISSION_MANAGE_ROLE);
 			}
 		}
 	}
 
+	/**
+	 * Matches the action against the ones we know in place so they never make a string of the path
+	 *
+	 * @param context the context of the request
+	 * @return the name of the action
+	 */
 	@Override
-	public void onRequest(HttpContext context, String action) {
+	protected String getAction(HttpContext context) {
+		int action = context.getPathSegments().indexOf(ACTION_INDEX, ACTIONS);
+		return action < 0 ? super.getAction(context) : ACTIONS[action];
+	}
 
-		String entityName = context.getPathPart(ENTITY_NAME_INDEX);
-		String entityId;
-		if (action.equals(ACTION_MANAGE))
-			entityId = context.getPathPart(ENTITY_ID_INDEX);
-		else
-			entityId = context.getPathPart(ID_INDEX);
-		long userId = 0;
-		if (!StringUtils.isNullEmptyOrWhiteSpace(entityId)) {
-			try {
-				userId = Long.valueOf(entityId);
-			} catch (NumberFormatException e) {
-				e.printStackTrace();
-			}
+	@Override
+	public void onRequest(HttpContext context, String action) {
+		PathSegments segments = context.getPathSegments();
+		// ids that are missing or not numbers are 0
+		long userId = segments.segmentAsLong(action.equals(ACTION_MANAGE) ? ENTITY_ID_INDEX : ID_INDEX, 0);
+		String entityAction = ACTION_LIST;
+		if (!segments.isBlank(ENTITY_ACTION_INDEX)) {
+			int entityActionIndex = segments.indexOf(ENTITY_ACTION_INDEX, ENTITY_ACTIONS);
+			// anything else is left for the switch to ignore like before
+			entityAction = entityActionIndex < 0 ? segments.segmentAsString(ENTITY_ACTION_INDEX) : ENTITY_ACTIONS[entityActionIndex];
 		}
-		String entityAction = context.getPathPart(ENTITY_ACTION_INDEX);
-		if (StringUtils.isNullEmptyOrWhiteSpace(entityAction))
-			entityAction = ACTION_LIST;
 		switch (action) {
 			case ACTION_MANAGE:
-				if (entityName.equals(ENTITY_USER_NAME)) {
+				if (segments.segmentEquals(ENTITY_NAME_INDEX, ENTITY_USER_NAME)) {
 					switch (entityAction) {
 						case ACTION_LIST:
 							onListUser(context);
@@ -121,7 +124,7 @@ public abstract class BaseAuthenticationPathHandler extends BaseFoxyPathHandler
 							onRemoveUser(context, userId);
 							break;
 					}
-				} else if (entityName.equals(ENTITY_ROLE_NAME)) {
+				} else if (segments.segmentEquals(ENTITY_NAME_INDEX, ENTITY_ROLE_NAME)) {
 					switch (entityAction) {
 						case ACTION_LIST:
 							onListRole(context);
@@ -31,12 +31,25 @@ public abstract class BaseCRUDPathHandler extends BaseFoxyPathHandler {
 	protected static final String ACTION_MODIFY = "modify";
 	protected static final String ACTION_VIEW = "view";
 	protected static final String ACTION_REMOVE = "remove";
+	private static final String[] CRUD_ACTIONS = {ACTION_LIST, ACTION_VIEW, ACTION_CREATE, ACTION_MODIFY, ACTION_REMOVE};
 
 	@SuppressWarnings("unused")
 	protected BaseCRUDPathHandler(String pathHandled) {
 		super(pathHandled);
 	}
 
+	/**
+	 * Matches the action against the CRUD actions in place so the usual ones never make a string of the path
+	 *
+	 * @param context the context of the request
+	 * @return the name of the action
+	 */
+	@Override
+	protected String getAction(HttpContext context) {
+		int action = context.getPathSegments().indexOf(ACTION_INDEX, CRUD_ACTIONS);
+		return action < 0 ? super.getAction(context) : CRUD_ACTIONS[action];
+	}
+
 	@Override
 	public void onRequest(HttpContext context, String action) {
 		switch (action) {
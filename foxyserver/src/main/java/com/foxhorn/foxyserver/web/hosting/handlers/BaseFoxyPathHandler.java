@@ -18,9 +18,9 @@
 
 package com.foxhorn.foxyserver.web.hosting.handlers;
 
-import com.foxhorn.foxyserver.text.StringUtils;
 import com.foxhorn.foxyserver.web.HttpContext;
 import com.foxhorn.foxyserver.web.HttpResponse;
+import com.foxhorn.foxyserver.web.PathSegments;
 
 /**
  * This is the base class that handles url request paths for our simple little web server
@@ -51,15 +51,26 @@ public abstract class BaseFoxyPathHandler {
 	 * @param context the context of the request
 	 */
 	public void handleRequest(HttpContext context) {
-		String action = context.getPathPart(ACTION_INDEX);
-		if (StringUtils.isNullEmptyOrWhiteSpace(action))
-			action = ACTION_LIST;
+		String action = getAction(context);
 		// invoke the logic that sets needed permissions
 		setPermissions(context, action);
 		if (verifyPermissions(context))
 			onRequest(context, action);
 	}
 
+	/**
+	 * Works out the name of the action requested from the first part of the local path, list if there is none
+	 *
+	 * @param context the context of the request
+	 * @return the name of the action
+	 */
+	protected String getAction(HttpContext context) {
+		PathSegments segments = context.getPathSegments();
+		if (segments.isBlank(ACTION_INDEX))
+			return ACTION_LIST;
+		return segments.segmentAsString(ACTION_INDEX);
+	}
+
 	/**
 	 * This is called to process a request on classes that inherit from this
 	 *
@@ -0,0 +1,129 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting.handlers;
+
+import com.foxhorn.foxyserver.web.HttpContext;
+import com.foxhorn.foxyserver.web.HttpRequest;
+import com.foxhorn.foxyserver.web.PathSegments;
+
+/**
+ * This is the base of the handlers the route processor of foxyserver-compiler writes for @Route classes and methods.
+ * Actions are matched against the path in place and dispatched by index to a direct call of the method, and the
+ * permissions each one needs were worked out when the app was compiled so there is nothing to look up per request.
+ * Do not extend this by hand, put @Route and @Action on the methods of a class instead
+ */
+public abstract class GeneratedPathHandler extends BaseFoxyPathHandler {
+
+	private static final int NO_ACTION = -1;
+
+	private final String[] actions;
+	private final int[][] permissions;
+	private final int listAction;
+
+	/**
+	 * ctor
+	 *
+	 * @param pathHandled the route of the handler
+	 * @param actions     the names of the actions by index or null for a handler of a single method
+	 * @param permissions the permissions each action needs by index, a handler of a single method has one entry
+	 */
+	protected GeneratedPathHandler(String pathHandled, String[] actions, int[][] permissions) {
+		super(pathHandled);
+		this.actions = actions;
+		this.permissions = permissions;
+		int list = NO_ACTION;
+		if (actions != null) {
+			for (int i = 0; i < actions.length; i++) {
+				if (actions[i].equals(ACTION_LIST))
+					list = i;
+			}
+		}
+		listAction = list;
+	}
+
+	/**
+	 * Finds the action, adds the permissions it needs and calls its method if the auth handler allows it
+	 *
+	 * @param context the context of the request
+	 */
+	@Override
+	public void handleRequest(HttpContext context) {
+		int action = findAction(context);
+		if (action == NO_ACTION) {
+			context.getResponse().send404();
+			return;
+		}
+		HttpRequest request = context.getRequest();
+		for (int permission : permissions[action])
+			request.addPermissionRequirement(permission);
+		// the auth handler gets its say even when no permissions are needed, as it does for any other handler
+		if (verifyPermissions(context))
+			dispatch(context, action);
+	}
+
+	/**
+	 * Calls the method of an action
+	 *
+	 * @param context the context of the request
+	 * @param action  the index of the action
+	 */
+	protected abstract void dispatch(HttpContext context, int action);
+
+	/**
+	 * Here for anything that still calls a handler by action name, requests go through handleRequest
+	 *
+	 * @param context the context of the request
+	 * @param action  the name of the action requested
+	 */
+	@Override
+	public void onRequest(HttpContext context, String action) {
+		int index = NO_ACTION;
+		if (actions == null) {
+			index = 0;
+		} else {
+			for (int i = 0; i < actions.length; i++) {
+				if (actions[i].equals(action))
+					index = i;
+			}
+		}
+		if (index == NO_ACTION)
+			context.getResponse().send404();
+		else
+			dispatch(context, index);
+	}
+
+	/**
+	 * The permissions are added in handleRequest from what was worked out at compile time
+	 *
+	 * @param context the the context of the request
+	 * @param action  the name of the action requested
+	 */
+	@Override
+	protected void setPermissions(HttpContext context, String action) {
+	}
+
+	private int findAction(HttpContext context) {
+		if (actions == null)
+			return 0;
+		PathSegments segments = context.getPathSegments();
+		if (segments.isBlank(ACTION_INDEX))
+			return listAction;
+		return segments.indexOf(ACTION_INDEX, actions);
+	}
+}
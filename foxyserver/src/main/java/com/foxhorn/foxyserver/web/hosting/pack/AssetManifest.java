@@ -0,0 +1,139 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting.pack;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This is the manifest AssetPipeline writes next to the files it processed. For every file it says which path the
+ * content is really served from (a fingerprinted name like app.1a2b3c4d.js for app.js) and which precompressed
+ * variants were written next to it. With it the server can rewrite a request for a plain name, mark fingerprinted
+ * files as immutable and pick a variant without checking what files exist. Each line of the manifest is
+ * <pre>
+ * logical path TAB served path TAB variant extensions separated by commas or -
+ * </pre>
+ * and lines starting with # are comments
+ */
+public class AssetManifest {
+
+	public static final String FILE_NAME = "asset-manifest.txt";
+	static final String HEADER = "# foxy asset manifest 1";
+	static final String NO_VARIANTS = "-";
+	static final Charset CHARSET = Charset.forName("UTF-8");
+
+	private final Map<String, Entry> entries;
+
+	private AssetManifest(Map<String, Entry> entries) {
+		this.entries = entries;
+	}
+
+	/**
+	 * Reads a manifest
+	 *
+	 * @param in the manifest, it is closed once read
+	 * @return the manifest
+	 * @throws IOException if it can not be read or a line is not one we understand
+	 */
+	public static AssetManifest read(InputStream in) throws IOException {
+		Map<String, Entry> entries = new HashMap<>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, CHARSET));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.length() == 0 || line.charAt(0) == '#')
+					continue;
+				String[] fields = line.split("\t");
+				if (fields.length != 3)
+					throw new IOException(String.format("bad asset manifest line: %s", line));
+				String[] variants = fields[2].equals(NO_VARIANTS) ? new String[0] : fields[2].split(",");
+				Entry entry = new Entry(fields[0], fields[1], variants);
+				entries.put(entry.logicalPath, entry);
+				// a fingerprinted file is asked for by its served name once pages point at it
+				entries.put(entry.servedPath, entry);
+			}
+		} finally {
+			reader.close();
+		}
+		return new AssetManifest(Collections.unmodifiableMap(entries));
+	}
+
+	/**
+	 * @param path the file with path info, either its logical or its served path
+	 * @return the entry or null if the manifest does not know the file
+	 */
+	public Entry find(String path) {
+		return entries.get(path);
+	}
+
+	/**
+	 * One processed file
+	 */
+	public static class Entry {
+		private final String logicalPath;
+		private final String servedPath;
+		private final String[] variants;
+
+		Entry(String logicalPath, String servedPath, String[] variants) {
+			this.logicalPath = logicalPath;
+			this.servedPath = servedPath;
+			this.variants = variants;
+		}
+
+		/**
+		 * @return the path of the source file ie /app.js
+		 */
+		@SuppressWarnings("unused")
+		public String getLogicalPath() {
+			return logicalPath;
+		}
+
+		/**
+		 * @return the path the content is served from ie /app.1a2b3c4d.js
+		 */
+		public String getServedPath() {
+			return servedPath;
+		}
+
+		/**
+		 * @return true if the served name holds a hash of the content so it never changes
+		 */
+		public boolean isFingerprinted() {
+			return !servedPath.equals(logicalPath);
+		}
+
+		/**
+		 * @param extension a variant extension with the dot ie .gz
+		 * @return true if servedPath + extension was written
+		 */
+		public boolean hasVariant(String extension) {
+			for (String variant : variants) {
+				if (extension.length() == variant.length() + 1 && extension.endsWith(variant))
+					return true;
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting.pack;
+
+import com.foxhorn.foxyserver.text.StringUtils;
+import com.foxhorn.foxyserver.web.hosting.WebRootFiles;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This reads a pack of web files that AssetPackWriter put together into one file. A pack is laid out as
+ * <pre>
+ * int    magic (FXPK)
+ * int    format version
+ * int    entry count
+ * then for each entry
+ * short  path length in bytes
+ * byte[] path as utf-8 ie /index.html
+ * long   offset of the content from the start of the pack
+ * long   content length
+ * long   modified time of the source file in millis since the epoch
+ * byte[] first 16 bytes of the SHA-1 of the content
+ * then the content of every entry
+ * </pre>
+ * Numbers are big endian. Precompressed variants are packed as entries of their own (file.gz next to file) so they
+ * are found the same way they are next to plain files. The content is never copied, each file is a slice of the
+ * buffer the pack was read from which is normally a memory map of the pack
+ */
+public class AssetPack {
+
+	public static final int MAGIC = 0x4658504B;
+	public static final int VERSION = 1;
+	public static final int HASH_BYTES = WebRootFiles.HASH_BYTES;
+	static final Charset PATH_CHARSET = Charset.forName("UTF-8");
+
+	private final ByteBuffer content;
+	private final Map<String, Entry> entries;
+
+	private AssetPack(ByteBuffer content, Map<String, Entry> entries) {
+		this.content = content;
+		this.entries = entries;
+	}
+
+	/**
+	 * Reads the entry table of a pack
+	 *
+	 * @param pack the whole pack starting at position 0, it is not changed
+	 * @return the pack
+	 * @throws IOException if the buffer does not hold a pack we can read
+	 */
+	public static AssetPack read(ByteBuffer pack) throws IOException {
+		ByteBuffer table = pack.duplicate();
+		table.position(0);
+		try {
+			if (table.getInt() != MAGIC)
+				throw new IOException("not an asset pack");
+			int version = table.getInt();
+			if (version != VERSION)
+				throw new IOException(String.format("asset pack version %s is not supported", version));
+			int count = table.getInt();
+			Map<String, Entry> entries = new HashMap<>(count * 2);
+			byte[] hash = new byte[HASH_BYTES];
+			for (int i = 0; i < count; i++) {
+				byte[] path = new byte[table.getShort() & 0xffff];
+				table.get(path);
+				long offset = table.getLong();
+				long length = table.getLong();
+				long lastModified = table.getLong();
+				table.get(hash);
+				if (offset < 0 || length < 0 || offset + length > pack.limit())
+					throw new IOException("asset pack entry runs past the end of the pack");
+				Entry entry = new Entry(new String(path, PATH_CHARSET), (int) offset, (int) length, lastModified, StringUtils.bytesToHex(hash));
+				entries.put(entry.path, entry);
+			}
+			return new AssetPack(pack.duplicate(), Collections.unmodifiableMap(entries));
+		} catch (RuntimeException e) {
+			// a truncated table underflows the buffer
+			throw new IOException("asset pack is damaged", e);
+		}
+	}
+
+	/**
+	 * @param path the file with path info as it is requested
+	 * @return the entry or null if the pack does not hold the file
+	 */
+	public Entry find(String path) {
+		return entries.get(path);
+	}
+
+	/**
+	 * @param entry an entry of this pack
+	 * @return a read only view of the content of the entry, nothing is copied
+	 */
+	public ByteBuffer slice(Entry entry) {
+		ByteBuffer view = content.asReadOnlyBuffer();
+		view.limit(entry.offset + entry.length);
+		view.position(entry.offset);
+		return view.slice();
+	}
+
+	/**
+	 * @return the path of every file in the pack
+	 */
+	public Set<String> getPaths() {
+		return entries.keySet();
+	}
+
+	/**
+	 * @return how many files are in the pack
+	 */
+	@SuppressWarnings("unused")
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * One file in the pack
+	 */
+	public static class Entry {
+		private final String path;
+		private final int offset;
+		private final int length;
+		private final long lastModified;
+		private final String contentHash;
+
+		Entry(String path, int offset, int length, long lastModified, String contentHash) {
+			this.path = path;
+			this.offset = offset;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.contentHash = contentHash;
+		}
+
+		/**
+		 * @return the file with path info as it is requested
+		 */
+		@SuppressWarnings("unused")
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * @return how many bytes the file holds
+		 */
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * @return when the source file last changed when it was packed in millis since the epoch
+		 */
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * @return a hex hash of the content of the file
+		 */
+		public String getContentHash() {
+			return contentHash;
+		}
+	}
+}
@@ -0,0 +1,337 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting.routing;
+
+import com.foxhorn.foxyserver.web.HttpRequest;
+import com.foxhorn.foxyserver.web.hosting.handlers.BaseFoxyPathHandler;
+
+import java.util.Arrays;
+
+/**
+ * This finds the path handler for a request with a radix tree built from the routes, so the time it takes depends on
+ * how long the path is and not on how many handlers there are or what order they were added in. A route is either
+ * exact, the whole path has to match, or a prefix, anything that starts with it matches like the path handled of a
+ * BaseFoxyPathHandler always has. Exact routes win over prefix routes and the longest prefix wins among them.
+ * <p/>
+ * A whole segment of a route can be a parameter such as /api/users/{id} which matches any one segment and is handed
+ * to the handler by name, {id:long} only matches digits. Literal text wins over a parameter where both could match.
+ * Routes are for a single verb or ANY_VERB, a path that only has routes for other verbs is a 405.
+ * <p/>
+ * Add every route before the server is started, finding a route is not synchronized with adding one
+ */
+public class PathRouter {
+
+	/**
+	 * Use this as the verb of a route that handles every verb
+	 */
+	public static final byte ANY_VERB = 0;
+
+	/**
+	 * Use this as the type of a parameter that only matches digits, as in {id:long}
+	 */
+	public static final String PARAMETER_TYPE_LONG = "long";
+
+	private static final char SEGMENT_SEPARATOR = '/';
+	private static final char PARAMETER_START = '{';
+	private static final char PARAMETER_END = '}';
+	private static final char PARAMETER_TYPE_SEPARATOR = ':';
+	private static final String[] VERB_NAMES = {
+			null,
+			HttpRequest.REQUEST_VERB_GET_NAME,
+			HttpRequest.REQUEST_VERB_POST_NAME,
+			HttpRequest.REQUEST_VERB_HEAD_NAME,
+			HttpRequest.REQUEST_VERB_PUT_NAME,
+			HttpRequest.REQUEST_VERB_DELETE_NAME,
+			HttpRequest.REQUEST_VERB_TRACE_NAME,
+			HttpRequest.REQUEST_VERB_OPTIONS_NAME,
+			HttpRequest.REQUEST_VERB_CONNECT_NAME,
+			HttpRequest.REQUEST_VERB_PATCH_NAME
+	};
+
+	private final Node root = new Node("");
+	private int maxParameterCount;
+	private int routeCount;
+
+	/**
+	 * Adds a route that only matches the whole path
+	 *
+	 * @param verb    the verb the route is for (HttpRequest.REQUEST_VERB_GET...) or ANY_VERB
+	 * @param pattern the path, segments may be parameters such as /api/users/{id}
+	 * @param handler the handler that gets the matching requests
+	 * @throws IllegalArgumentException if the pattern is not well formed or the route is already taken
+	 */
+	public void addRoute(byte verb, String pattern, BaseFoxyPathHandler handler) {
+		add(verb, pattern, handler, false);
+	}
+
+	/**
+	 * Adds a route that matches any path that starts with the prefix
+	 *
+	 * @param verb    the verb the route is for (HttpRequest.REQUEST_VERB_GET...) or ANY_VERB
+	 * @param prefix  the start of the path, segments may be parameters such as /api/users/{id}/
+	 * @param handler the handler that gets the matching requests
+	 * @throws IllegalArgumentException if the prefix is not well formed or the route is already taken
+	 */
+	public void addPrefixRoute(byte verb, String prefix, BaseFoxyPathHandler handler) {
+		add(verb, prefix, handler, true);
+	}
+
+	/**
+	 * Finds the route for a request. Nothing is allocated, what was found is put in the match which can be used
+	 * again for the next request
+	 *
+	 * @param verb  the verb of the request
+	 * @param path  the requested document
+	 * @param match where to put what was found
+	 * @return true if a handler was found
+	 */
+	public boolean find(byte verb, String path, RouteMatch match) {
+		match.reset(path, maxParameterCount);
+		if (search(root, verb, path, 0, 0, match))
+			return true;
+		return match.usePrefixMatch();
+	}
+
+	/**
+	 * @return how many routes have been added
+	 */
+	@SuppressWarnings("unused")
+	public int getRouteCount() {
+		return routeCount;
+	}
+
+	/**
+	 * Used to build the Allow header of a 405
+	 *
+	 * @param verbMask the verbs as a bit mask, as in RouteMatch.getAllowedVerbs
+	 * @return the verb names separated by commas
+	 */
+	public static String describeVerbs(int verbMask) {
+		if ((verbMask & (1 << ANY_VERB)) != 0)
+			verbMask = ~0;
+		StringBuilder sb = new StringBuilder();
+		for (int verb = 1; verb < VERB_NAMES.length; verb++) {
+			if ((verbMask & (1 << verb)) == 0)
+				continue;
+			if (sb.length() > 0)
+				sb.append(", ");
+			sb.append(VERB_NAMES[verb]);
+		}
+		return sb.toString();
+	}
+
+	private void add(byte verb, String pattern, BaseFoxyPathHandler handler, boolean prefix) {
+		if (verb < ANY_VERB || verb >= VERB_NAMES.length)
+			throw new IllegalArgumentException(String.format("unknown verb %s for route %s", verb, pattern));
+		if (pattern == null || pattern.isEmpty() || pattern.charAt(0) != SEGMENT_SEPARATOR)
+			throw new IllegalArgumentException(String.format("route %s has to start with %s", pattern, SEGMENT_SEPARATOR));
+		Node node = root;
+		int parameterCount = 0;
+		int position = 0;
+		while (position < pattern.length()) {
+			int parameterStart = pattern.indexOf(PARAMETER_START, position);
+			if (parameterStart < 0) {
+				node = insert(node, pattern.substring(position));
+				break;
+			}
+			if (pattern.charAt(parameterStart - 1) != SEGMENT_SEPARATOR)
+				throw new IllegalArgumentException(String.format("a parameter has to be a whole segment in route %s", pattern));
+			int parameterEnd = pattern.indexOf(PARAMETER_END, parameterStart);
+			if (parameterEnd < 0 || (parameterEnd + 1 < pattern.length() && pattern.charAt(parameterEnd + 1) != SEGMENT_SEPARATOR))
+				throw new IllegalArgumentException(String.format("a parameter has to be a whole segment in route %s", pattern));
+			node = insert(node, pattern.substring(position, parameterStart));
+			node = insertParameter(node, pattern, pattern.substring(parameterStart + 1, parameterEnd));
+			parameterCount++;
+			position = parameterEnd + 1;
+		}
+		BaseFoxyPathHandler[] handlers;
+		if (prefix) {
+			if (node.prefixHandlers == null)
+				node.prefixHandlers = new BaseFoxyPathHandler[VERB_NAMES.length];
+			handlers = node.prefixHandlers;
+			node.prefixVerbMask |= 1 << verb;
+		} else {
+			if (node.handlers == null)
+				node.handlers = new BaseFoxyPathHandler[VERB_NAMES.length];
+			handlers = node.handlers;
+			node.verbMask |= 1 << verb;
+		}
+		if (handlers[verb] != null)
+			throw new IllegalArgumentException(String.format("route %s is already handled by %s", pattern, handlers[verb].getClass().getName()));
+		handlers[verb] = handler;
+		maxParameterCount = Math.max(maxParameterCount, parameterCount);
+		routeCount++;
+	}
+
+	/**
+	 * Walks the literal text down from a node splitting nodes where the text parts from them
+	 *
+	 * @return the node the text ends on
+	 */
+	private static Node insert(Node node, String text) {
+		while (!text.isEmpty()) {
+			int index = node.indexOfChild(text.charAt(0));
+			if (index < 0) {
+				Node child = new Node(text);
+				node.addChild(child);
+				return child;
+			}
+			Node child = node.children[index];
+			int common = 0;
+			int most = Math.min(child.label.length(), text.length());
+			while (common < most && child.label.charAt(common) == text.charAt(common))
+				common++;
+			if (common < child.label.length()) {
+				Node split = new Node(child.label.substring(0, common));
+				child.label = child.label.substring(common);
+				split.addChild(child);
+				node.children[index] = split;
+				child = split;
+			}
+			node = child;
+			text = text.substring(common);
+		}
+		return node;
+	}
+
+	private static Node insertParameter(Node node, String pattern, String parameter) {
+		String name = parameter;
+		String type = null;
+		int typeSeparator = parameter.indexOf(PARAMETER_TYPE_SEPARATOR);
+		if (typeSeparator >= 0) {
+			name = parameter.substring(0, typeSeparator);
+			type = parameter.substring(typeSeparator + 1);
+			if (!type.equals(PARAMETER_TYPE_LONG))
+				throw new IllegalArgumentException(String.format("unknown parameter type %s in route %s", type, pattern));
+		}
+		if (name.isEmpty())
+			throw new IllegalArgumentException(String.format("a parameter has no name in route %s", pattern));
+		boolean digitsOnly = type != null;
+		Node child = node.parameterChild;
+		if (child == null) {
+			child = new Node("");
+			child.parameterName = name;
+			child.digitsOnly = digitsOnly;
+			node.parameterChild = child;
+		} else if (!child.parameterName.equals(name) || child.digitsOnly != digitsOnly) {
+			throw new IllegalArgumentException(String.format("parameter {%s} in route %s conflicts with {%s} of another route", parameter, pattern, child.parameterName));
+		}
+		return child;
+	}
+
+	/**
+	 * Looks for an exact route from a node whose text has been matched up to position, remembering the longest
+	 * prefix route on the way. Literal children are tried before a parameter
+	 */
+	private static boolean search(Node node, byte verb, String path, int position, int parameterCount, RouteMatch match) {
+		if (node.prefixHandlers != null) {
+			BaseFoxyPathHandler handler = handlerFor(node.prefixHandlers, verb);
+			if (handler != null)
+				match.rememberPrefixMatch(handler, position, parameterCount);
+			else
+				match.addAllowedVerbs(node.prefixVerbMask);
+		}
+		int length = path.length();
+		if (position == length) {
+			if (node.handlers == null)
+				return false;
+			BaseFoxyPathHandler handler = handlerFor(node.handlers, verb);
+			if (handler == null) {
+				match.addAllowedVerbs(node.verbMask);
+				return false;
+			}
+			match.setMatch(handler, position, parameterCount);
+			return true;
+		}
+		int index = node.indexOfChild(path.charAt(position));
+		if (index >= 0) {
+			Node child = node.children[index];
+			if (path.regionMatches(position, child.label, 0, child.label.length()) && search(child, verb, path, position + child.label.length(), parameterCount, match))
+				return true;
+		}
+		Node parameter = node.parameterChild;
+		if (parameter != null) {
+			int end = path.indexOf(SEGMENT_SEPARATOR, position);
+			if (end < 0)
+				end = length;
+			if (end > position && (!parameter.digitsOnly || isDigits(path, position, end))) {
+				match.setParameter(parameterCount, parameter.parameterName, position, end);
+				if (search(parameter, verb, path, end, parameterCount + 1, match))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private static BaseFoxyPathHandler handlerFor(BaseFoxyPathHandler[] handlers, byte verb) {
+		if (verb > ANY_VERB && verb < handlers.length && handlers[verb] != null)
+			return handlers[verb];
+		return handlers[ANY_VERB];
+	}
+
+	private static boolean isDigits(String path, int from, int to) {
+		for (int i = from; i < to; i++) {
+			char current = path.charAt(i);
+			if (current < '0' || current > '9')
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * One node of the tree, the literal text it matches and what comes after
+	 */
+	private static class Node {
+		private static final char[] NO_FIRST_CHARS = new char[0];
+		private static final Node[] NO_CHILDREN = new Node[0];
+
+		private String label;
+		// the first character of each literal child so picking one is a scan of a few chars
+		private char[] firstChars = NO_FIRST_CHARS;
+		private Node[] children = NO_CHILDREN;
+		private Node parameterChild;
+		// set on the node that stands for a parameter segment
+		private String parameterName;
+		private boolean digitsOnly;
+		// by verb with ANY_VERB at 0, null until a route ends here
+		private BaseFoxyPathHandler[] handlers;
+		private BaseFoxyPathHandler[] prefixHandlers;
+		private int verbMask;
+		private int prefixVerbMask;
+
+		Node(String label) {
+			this.label = label;
+		}
+
+		int indexOfChild(char first) {
+			for (int i = 0; i < firstChars.length; i++) {
+				if (firstChars[i] == first)
+					return i;
+			}
+			return -1;
+		}
+
+		void addChild(Node child) {
+			firstChars = Arrays.copyOf(firstChars, firstChars.length + 1);
+			firstChars[firstChars.length - 1] = child.label.charAt(0);
+			children = Arrays.copyOf(children, children.length + 1);
+			children[children.length - 1] = child;
+		}
+	}
+}
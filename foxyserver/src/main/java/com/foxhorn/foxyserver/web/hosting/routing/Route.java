@@ -0,0 +1,50 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting.routing;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Puts a handler class or method on a path. On a class it is the prefix its @Action methods are under, on a method it
+ * is a route straight to that method which may have parameters like /api/users/{id}. The route processor of
+ * foxyserver-compiler turns these into an IRouteTable named after the class with Routes on the end, they are not kept
+ * for runtime
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Route {
+
+	/**
+	 * @return the path of the route
+	 */
+	String value();
+
+	/**
+	 * @return the verb the route is for (HttpRequest.REQUEST_VERB_GET...), every verb by default and always for a class
+	 */
+	byte verb() default PathRouter.ANY_VERB;
+
+	/**
+	 * @return true if anything that starts with the path matches, a class route is always a prefix
+	 */
+	boolean prefix() default false;
+}
@@ -0,0 +1,217 @@
+/*
+ *
+ *  * Copyright (C) 2015. Matt Van Horn (http://www.musingsofacodefiend.com/)
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.foxhorn.foxyserver.web.hosting.routing;
+
+import com.foxhorn.foxyserver.web.hosting.handlers.BaseFoxyPathHandler;
+
+/**
+ * This is what PathRouter found for a request, the handler and where the path parameters are in the path. Parameters
+ * are kept as offsets into the path so finding a route allocates nothing, a value is only cut out of the path when it
+ * is asked for. One of these is kept per connection and used again for each request
+ */
+public class RouteMatch {
+
+	private static final String[] NO_NAMES = new String[0];
+	private static final int[] NO_OFFSETS = new int[0];
+
+	private String path;
+	private BaseFoxyPathHandler handler;
+	private int localPathStart;
+	private int parameterCount;
+	private String[] parameterNames = NO_NAMES;
+	private int[] parameterStarts = NO_OFFSETS;
+	private int[] parameterEnds = NO_OFFSETS;
+	// the longest prefix route seen while looking for an exact one
+	private BaseFoxyPathHandler prefixHandler;
+	private int prefixEnd;
+	private int prefixParameterCount;
+	private String[] prefixParameterNames = NO_NAMES;
+	private int[] prefixParameterStarts = NO_OFFSETS;
+	private int[] prefixParameterEnds = NO_OFFSETS;
+	private int allowedVerbs;
+
+	/**
+	 * @return the handler that was found or null
+	 */
+	public BaseFoxyPathHandler getHandler() {
+		return handler;
+	}
+
+	/**
+	 * @return true if routes match the path but none of them for the verb of the request
+	 */
+	public boolean isMethodNotAllowed() {
+		return handler == null && allowedVerbs != 0;
+	}
+
+	/**
+	 * @return the verbs that have routes for the path as a bit mask, see PathRouter.describeVerbs
+	 */
+	public int getAllowedVerbs() {
+		return allowedVerbs;
+	}
+
+	/**
+	 * @return where the part of the path after the route starts, this is the end of the path for exact routes
+	 */
+	public int getLocalPathStart() {
+		return localPathStart;
+	}
+
+	/**
+	 * @return the part of the path after the route
+	 */
+	@SuppressWarnings("unused")
+	public String getLocalPath() {
+		return path.substring(localPathStart);
+	}
+
+	/**
+	 * @return how many path parameters were matched
+	 */
+	@SuppressWarnings("unused")
+	public int getParameterCount() {
+		return parameterCount;
+	}
+
+	/**
+	 * @param index the index of the parameter in the route
+	 * @return the name of the parameter
+	 */
+	@SuppressWarnings("unused")
+	public String getParameterName(int index) {
+		return parameterNames[index];
+	}
+
+	/**
+	 * @param index the index of the parameter in the route
+	 * @return the value of the parameter
+	 */
+	@SuppressWarnings("unused")
+	public String getParameterValue(int index) {
+		return path.substring(parameterStarts[index], parameterEnds[index]);
+	}
+
+	/**
+	 * @param name the name of the parameter in the route
+	 * @return true if the route has the parameter
+	 */
+	public boolean hasParameter(String name) {
+		return indexOfParameter(name) >= 0;
+	}
+
+	/**
+	 * @param name the name of the parameter in the route
+	 * @return the value or null if the route has no such parameter
+	 */
+	public String getParameter(String name) {
+		int index = indexOfParameter(name);
+		return index < 0 ? null : path.substring(parameterStarts[index], parameterEnds[index]);
+	}
+
+	/**
+	 * Reads a parameter as a number without cutting it out of the path
+	 *
+	 * @param name the name of the parameter in the route
+	 * @return the value or -1 if the route has no such parameter or it is not a number
+	 */
+	public long getParameterLong(String name) {
+		int index = indexOfParameter(name);
+		if (index < 0 || parameterEnds[index] - parameterStarts[index] > 18)
+			return -1;
+		long value = 0;
+		for (int i = parameterStarts[index]; i < parameterEnds[index]; i++) {
+			char current = path.charAt(i);
+			if (current < '0' || current > '9')
+				return -1;
+			value = value * 10 + (current - '0');
+		}
+		return value;
+	}
+
+	private int indexOfParameter(String name) {
+		for (int i = 0; i < parameterCount; i++) {
+			if (parameterNames[i].equals(name))
+				return i;
+		}
+		return -1;
+	}
+
+	void reset(String path, int maxParameterCount) {
+		this.path = path;
+		handler = null;
+		localPathStart = path.length();
+		parameterCount = 0;
+		prefixHandler = null;
+		prefixEnd = -1;
+		prefixParameterCount = 0;
+		allowedVerbs = 0;
+		if (parameterNames.length < maxParameterCount) {
+			// only grows when routes with more parameters were added since this was last used
+			parameterNames = new String[maxParameterCount];
+			parameterStarts = new int[maxParameterCount];
+			parameterEnds = new int[maxParameterCount];
+			prefixParameterNames = new String[maxParameterCount];
+			prefixParameterStarts = new int[maxParameterCount];
+			prefixParameterEnds = new int[maxParameterCount];
+		}
+	}
+
+	void setParameter(int index, String name, int start, int end) {
+		parameterNames[index] = name;
+		parameterStarts[index] = start;
+		parameterEnds[index] = end;
+	}
+
+	void setMatch(BaseFoxyPathHandler handler, int localPathStart, int parameterCount) {
+		this.handler = handler;
+		this.localPathStart = localPathStart;
+		this.parameterCount = parameterCount;
+	}
+
+	void rememberPrefixMatch(BaseFoxyPathHandler handler, int prefixEnd, int parameterCount) {
+		if (prefixEnd <= this.prefixEnd)
+			return;
+		prefixHandler = handler;
+		this.prefixEnd = prefixEnd;
+		prefixParameterCount = parameterCount;
+		System.arraycopy(parameterNames, 0, prefixParameterNames, 0, parameterCount);
+		System.arraycopy(parameterStarts, 0, prefixParameterStarts, 0, parameterCount);
+		System.arraycopy(parameterEnds, 0, prefixParameterEnds, 0, parameterCount);
+	}
+
+	void addAllowedVerbs(int verbMask) {
+		allowedVerbs |= verbMask;
+	}
+
+	/**
+	 * Falls back to the longest prefix route when there was no exact one
+	 *
+	 * @return true if there was a prefix route
+	 */
+	boolean usePrefixMatch() {
+		if (prefixHandler == null)
+			return false;
+		System.arraycopy(prefixParameterNames, 0, parameterNames, 0, prefixParameterCount);
+		System.arraycopy(prefixParameterStarts, 0, parameterStarts, 0, prefixParameterCount);
+		System.arraycopy(prefixParameterEnds, 0, parameterEnds, 0, prefixParameterCount);
+		setMatch(prefixHandler, prefixEnd, prefixParameterCount);
+		return true;
+	}
+}